@@ -0,0 +1,115 @@
+import axios from "axios";
+
+const BASE_URL = import.meta.env.VITE_BACKEND_URL;
+
+// Access tokens are short-lived. When the backend answers 401 the stored refresh
+// token is exchanged for a new pair and the request is sent once more. Pages read
+// the token when they render, so every authenticated backend call is re-stamped
+// with the current one before it goes out.
+
+const rawFetch = window.fetch.bind(window);
+let refreshing = null;
+
+export function saveSession(data) {
+  localStorage.setItem("token", data.token);
+  if (data.refreshToken) localStorage.setItem("refreshToken", data.refreshToken);
+}
+
+export function logout() {
+  const refreshToken = localStorage.getItem("refreshToken");
+  localStorage.clear();
+  if (refreshToken) {
+    // best effort: the tokens die with the session anyway once they expire
+    rawFetch(`${BASE_URL}/auth/logout`, {
+      method: "POST",
+      headers: { "Content-Type": "application/json" },
+      body: JSON.stringify({ refreshToken }),
+    }).catch(() => {});
+  }
+}
+
+// one refresh at a time: the refresh token is single use
+function refreshAccessToken() {
+  if (!refreshing) {
+    const refreshToken = localStorage.getItem("refreshToken");
+
+    refreshing = (refreshToken
+      ? rawFetch(`${BASE_URL}/auth/refresh`, {
+          method: "POST",
+          headers: { "Content-Type": "application/json" },
+          body: JSON.stringify({ refreshToken }),
+        }).then(async (res) => {
+          if (!res.ok) throw new Error("Session expired");
+          const data = await res.json();
+          saveSession(data);
+          return data.token;
+        })
+      : Promise.reject(new Error("Session expired"))
+    )
+      .catch((err) => {
+        // refresh token expired, revoked or missing: back to the login page
+        localStorage.clear();
+        window.location.assign("/");
+        throw err;
+      })
+      .finally(() => {
+        refreshing = null;
+      });
+  }
+  return refreshing;
+}
+
+function refreshable(url) {
+  return typeof url === "string" && url.startsWith(BASE_URL) && !url.startsWith(`${BASE_URL}/auth/`);
+}
+
+function currentBearer() {
+  return `Bearer ${localStorage.getItem("token")}`;
+}
+
+function fetchHeaders(init) {
+  const headers = new Headers(init.headers);
+  if (headers.has("Authorization")) headers.set("Authorization", currentBearer());
+  return headers;
+}
+
+async function fetchWithRefresh(input, init = {}) {
+  const url = typeof input === "string" ? input : input.url;
+  if (!refreshable(url) || !new Headers(init.headers).has("Authorization")) {
+    return rawFetch(input, init);
+  }
+
+  const res = await rawFetch(input, { ...init, headers: fetchHeaders(init) });
+  if (res.status !== 401) return res;
+
+  await refreshAccessToken();
+  return rawFetch(input, { ...init, headers: fetchHeaders(init) });
+}
+
+export function installSessionRefresh() {
+  window.fetch = fetchWithRefresh;
+
+  axios.interceptors.request.use((config) => {
+    if (refreshable(config.url) && config.headers?.Authorization) {
+      config.headers.Authorization = currentBearer();
+    }
+    return config;
+  });
+
+  axios.interceptors.response.use(undefined, async (error) => {
+    const config = error.config;
+    if (
+      error.response?.status !== 401 ||
+      !config ||
+      config.retriedAfterRefresh ||
+      !refreshable(config.url) ||
+      !config.headers?.Authorization
+    ) {
+      throw error;
+    }
+
+    config.retriedAfterRefresh = true;
+    await refreshAccessToken();
+    return axios(config);
+  });
+}
@@ -16,6 +16,7 @@ import {
 
 } from "react-icons/fi";
 import logo from "../assets/logo.png";
+import { logout } from "../auth/session";
 
 export default function Navbar() {
   const navigate = useNavigate();
@@ -27,7 +28,7 @@ export default function Navbar() {
   const userRole = rawRole.replace("ROLE_", "").toUpperCase();
 
   const handleLogout = () => {
-    localStorage.clear();
+    logout();
     navigate("/");
     setOpen(false);
   };
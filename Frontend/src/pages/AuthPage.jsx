@@ -3,6 +3,7 @@ import axios from "axios";
 import { useNavigate } from "react-router-dom";
 import { FaBook } from "react-icons/fa";
 import { motion } from "framer-motion";
+import { saveSession } from "../auth/session";
 
 const BASE_URL = import.meta.env.VITE_BACKEND_URL;
 
@@ -59,7 +60,7 @@ const AuthPage = () => {
 
         if (!token) throw new Error("Invalid username/password");
 
-        localStorage.setItem("token", token);
+        saveSession({ token, refreshToken: res.data.refreshToken });
         localStorage.setItem("user", JSON.stringify(user));
         localStorage.setItem("role", user.role);
 
@@ -0,0 +1,122 @@
+package org.wldu.webservices.benchmarks;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.wldu.webservices.WebservicesApplication;
+import org.wldu.webservices.pagination.KeysetPage;
+import org.wldu.webservices.services.contracts.BookService;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BookService list queries against a real PostgreSQL holding {@value #BOOKS} books,
+ * with the full application context (second-level cache, count cache) in place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookServiceBenchmark {
+
+    private static final int BOOKS = 10_000;
+    private static final int PAGE_SIZE = 20;
+
+    private EmbeddedPostgres postgres;
+    private ConfigurableApplicationContext context;
+    private BookService bookService;
+
+    @Setup
+    public void setUp() throws Exception {
+        postgres = EmbeddedPostgres.builder().start();
+
+        // command-line arguments win over application.properties
+        context = new SpringApplicationBuilder(WebservicesApplication.class).run(
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres",
+                "--server.port=0",
+                "--server.ssl.enabled=false",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.com.zaxxer.hikari=WARN"
+        );
+
+        seed(context.getBean(JdbcTemplate.class));
+        bookService = context.getBean(BookService.class);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.close();
+        postgres.close();
+    }
+
+    @Benchmark
+    public Page<Map<String, Object>> firstPage() {
+        return bookService.getBooks(null, 0, PAGE_SIZE, "title", "asc", null);
+    }
+
+    @Benchmark
+    public Page<Map<String, Object>> deepPage() {
+        return bookService.getBooks(null, BOOKS / PAGE_SIZE - 1, PAGE_SIZE, "title", "asc", null);
+    }
+
+    @Benchmark
+    public Page<Map<String, Object>> titleSearch() {
+        return bookService.getBooks("algorithms 4", 0, PAGE_SIZE, "title", "asc", null);
+    }
+
+    @Benchmark
+    public KeysetPage<Map<String, Object>> keysetFirstPage() {
+        return bookService.getBooksAfter(null, "", PAGE_SIZE, "title", "asc", null);
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(BOOKS);
+
+        for (int i = 0; i < BOOKS; i++) {
+            rows.add(new Object[]{
+                    "Algorithms " + i,
+                    "Author " + (i % 500),
+                    "BENCH-" + i,
+                    "Category " + (i % 20),
+                    1990 + i % 35,
+                    "Description of book " + i,
+                    90.00,
+                    5,
+                    5,
+                    now,
+                    now
+            });
+        }
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO books (title, author, isbn, category, published_year, description, " +
+                        "price, total_copies, copies_available, created_at, updated_at, version) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)",
+                rows
+        );
+    }
+}
@@ -0,0 +1,141 @@
+package org.wldu.webservices.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.entities.BorrowBook;
+import org.wldu.webservices.entities.Customer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response serialisation for the catalog and circulation screens:
+ * a page of Book entities, the projected /api/books/list page and a BorrowBook list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JacksonBenchmark {
+
+    @Param({"20", "100"})
+    private int rows;
+
+    private ObjectMapper objectMapper;
+    private List<Book> books;
+    private Map<String, Object> bookListPage;
+    private List<BorrowBook> borrows;
+
+    @Setup
+    public void setUp() {
+        // same defaults as the Boot auto-configured mapper used by the controllers
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+
+        books = new ArrayList<>(rows);
+        List<Map<String, Object>> projected = new ArrayList<>(rows);
+        borrows = new ArrayList<>(rows);
+
+        for (int i = 0; i < rows; i++) {
+            Book book = book(i);
+            books.add(book);
+            projected.add(row(book));
+            borrows.add(borrow(i, book));
+        }
+
+        bookListPage = new HashMap<>();
+        bookListPage.put("draw", 1);
+        bookListPage.put("data", projected);
+        bookListPage.put("recordsTotal", 10_000L);
+        bookListPage.put("recordsFiltered", 10_000L);
+        bookListPage.put("currentPage", 0);
+        bookListPage.put("totalPages", 10_000 / rows);
+        bookListPage.put("pageSize", rows);
+    }
+
+    @Benchmark
+    public byte[] bookEntities() throws Exception {
+        return objectMapper.writeValueAsBytes(books);
+    }
+
+    @Benchmark
+    public byte[] bookListPage() throws Exception {
+        return objectMapper.writeValueAsBytes(bookListPage);
+    }
+
+    @Benchmark
+    public byte[] borrowList() throws Exception {
+        return objectMapper.writeValueAsBytes(borrows);
+    }
+
+    private static Book book(int i) {
+        Book book = new Book();
+        book.setId((long) i + 1);
+        book.setVersion(0L);
+        book.setTitle("Introduction to Algorithms, volume " + i);
+        book.setAuthor("Thomas H. Cormen");
+        book.setIsbn("978-0-262-" + String.format("%05d", i));
+        book.setCategory("Computer Science");
+        book.setDescription("A comprehensive update of the leading algorithms text. ".repeat(12));
+        book.setPrice(new BigDecimal("90.00"));
+        book.setCoverImageUrl("/uploads/covers/" + i + ".jpg");
+        book.setTotalCopies(5);
+        book.setCopiesAvailable(3);
+        return book;
+    }
+
+    private static Map<String, Object> row(Book book) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", book.getId());
+        row.put("title", book.getTitle());
+        row.put("author", book.getAuthor());
+        row.put("isbn", book.getIsbn());
+        row.put("category", book.getCategory());
+        row.put("publishedYear", book.getPublishedYear());
+        row.put("price", book.getPrice());
+        row.put("coverImageUrl", book.getCoverImageUrl());
+        row.put("totalCopies", book.getTotalCopies());
+        row.put("copiesAvailable", book.getCopiesAvailable());
+        return row;
+    }
+
+    private static BorrowBook borrow(int i, Book book) {
+        Customer customer = new Customer();
+        customer.setId((long) i + 1);
+        customer.setName("Student " + i);
+        customer.setEmail("student" + i + "@wldu.edu.et");
+        customer.setPhoneNumber(String.format("09%08d", i));
+        customer.setCreatedAt(LocalDateTime.now());
+
+        BorrowBook borrow = new BorrowBook();
+        borrow.setId((long) i + 1);
+        borrow.setVersion(0L);
+        borrow.setCustomer(customer);
+        borrow.setBook(book);
+        borrow.setBorrowDate(LocalDateTime.now().minusDays(3));
+        borrow.setReturnDate(LocalDateTime.now().plusDays(11));
+        return borrow;
+    }
+}
@@ -0,0 +1,99 @@
+package org.wldu.webservices.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.wldu.webservices.auths.CustomUserDetailsService;
+import org.wldu.webservices.auths.JwtAuthFilter;
+import org.wldu.webservices.auths.JwtUtil;
+import org.wldu.webservices.auths.TokenVersionRegistry;
+import org.wldu.webservices.auths.Users;
+import org.wldu.webservices.auths.UsersRepository;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request authentication path: header parse, token validation,
+ * authorities (from the token claims, or from the cached user details when
+ * selfContained=false) and SecurityContext population.
+ * The repository behind both is a mock so the number reflects the filter itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthFilterBenchmark {
+
+    @Param({"true", "false"})
+    private boolean selfContained;
+
+    private JwtAuthFilter filter;
+    private String authorization;
+
+    @Setup
+    public void setUp() throws Exception {
+        JwtUtil jwtUtil = new JwtUtil(new SimpleMeterRegistry(), 10_000, 3600);
+        Users user = new Users();
+        user.setUsername("librarian");
+        user.setPassword("{noop}secret");
+        user.setRole("ROLE_LIBRARIAN");
+        user.setActive(true);
+
+        UsersRepository usersRepository = Mockito.mock(UsersRepository.class);
+        Mockito.when(usersRepository.findByUsername("librarian")).thenReturn(Optional.of(user));
+
+        CustomUserDetailsService userDetailsService =
+                new CustomUserDetailsService(usersRepository, new SimpleMeterRegistry(), 10_000, 300);
+
+        authorization = "Bearer " + jwtUtil.generateToken(user);
+        filter = new JwtAuthFilter(jwtUtil, userDetailsService, new StubTokenVersionRegistry(), selfContained);
+
+        // measuring the rejection path by accident would look like a big speed-up
+        authenticatedRequest();
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            throw new IllegalStateException("The benchmark token is not accepted by the filter");
+        }
+    }
+
+    @Benchmark
+    public MockHttpServletResponse authenticatedRequest() throws Exception {
+        // every request starts unauthenticated; cheaper and less skewing than a per-invocation teardown
+        SecurityContextHolder.clearContext();
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/books/list");
+        request.addHeader("Authorization", authorization);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    static final class StubTokenVersionRegistry extends TokenVersionRegistry {
+
+        StubTokenVersionRegistry() {
+            super(null, new SimpleMeterRegistry(), 1, 1);
+        }
+
+        @Override
+        public boolean isCurrent(String username, long tokenVersion) {
+            return true;
+        }
+    }
+}
@@ -3,8 +3,10 @@ package org.wldu.webservices;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.wldu.webservices.config.FileStorageProperties;
 @EnableConfigurationProperties(FileStorageProperties.class)
+@EnableScheduling
 @SpringBootApplication
 
 public class WebservicesApplication {
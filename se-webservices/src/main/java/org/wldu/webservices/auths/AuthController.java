@@ -1,44 +1,43 @@
 package org.wldu.webservices.auths;
 
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
 
-    private final AuthenticationManager authenticationManager;
-    private final JwtUtil jwtUtil;
-    private final UsersRepository userRepository; // Needed to fetch role
+    private final LoginService loginService;
+    private final RefreshTokenService refreshTokenService;
 
-    public AuthController(AuthenticationManager authenticationManager,
-                          JwtUtil jwtUtil,
-                          UsersRepository userRepository) {
-        this.authenticationManager = authenticationManager;
-        this.jwtUtil = jwtUtil;
-        this.userRepository = userRepository;
+    public AuthController(LoginService loginService,
+                          RefreshTokenService refreshTokenService) {
+        this.loginService = loginService;
+        this.refreshTokenService = refreshTokenService;
     }
 
+    // BCrypt runs on the login pool; the request thread is released while it does (429 when full)
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody AuthRequest request) {
-
-        // 1. Authenticate the user (Checks password against DB)
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                        request.getUsername(), request.getPassword()));
+    public CompletableFuture<ResponseEntity<AuthResponse>> login(@RequestBody AuthRequest request) {
+        return loginService.login(request)
+                .thenApply(ResponseEntity::ok);
+    }
 
-        // 2. Generate the JWT token
-        String token = jwtUtil.generateToken(request.getUsername());
+    // New access token + next refresh token; the presented refresh token is spent
+    @PostMapping("/refresh")
+    public ResponseEntity<AuthResponse> refresh(@RequestBody RefreshRequest request) {
+        return ResponseEntity.ok(refreshTokenService.rotate(request.getRefreshToken()));
+    }
 
-        // 3. FETCH THE FULL USER OBJECT
-        Users user = userRepository.findByUsername(request.getUsername())
-                .orElseThrow(() -> new RuntimeException("User not found in database after authentication"));
-        return ResponseEntity.ok(new AuthResponse(token, user));
+    // Ends this login everywhere it was refreshed; outstanding access tokens run out on their own
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@RequestBody RefreshRequest request) {
+        refreshTokenService.logout(request.getRefreshToken());
+        return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+}
@@ -18,6 +18,8 @@ class AuthRequest {
 @NoArgsConstructor // Required for JSON serialization
 class AuthResponse {
     private String token;
+    private String refreshToken;
+    private long expiresIn; // access token lifetime in seconds
     private Users user; // The missing piece that carries the ROLE
 
     // Constructor to match: return ResponseEntity.ok(new AuthResponse(token, user));
@@ -26,6 +28,13 @@ class AuthResponse {
         this.user = user;
     }
 
+    public AuthResponse(String token, String refreshToken, long expiresIn, Users user) {
+        this.token = token;
+        this.refreshToken = refreshToken;
+        this.expiresIn = expiresIn;
+        this.user = user;
+    }
+
     public String getToken() {
         return token;
     }
@@ -41,4 +50,12 @@ class AuthResponse {
     public void setUser(Users user) {
         this.user = user;
     }
-}
\ No newline at end of file
+}
+
+// --- Refresh / logout request DTO ---
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class RefreshRequest {
+    private String refreshToken;
+}
@@ -1,23 +1,56 @@
 package org.wldu.webservices.auths;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UsersRepository userRepository;
 
-    public CustomUserDetailsService(UsersRepository userRepository) {
+    // username -> details; UsersService evicts on every account change, the TTL is a backstop
+    private final Cache<String, UserDetails> cache;
+
+    public CustomUserDetailsService(UsersRepository userRepository,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${app.security.user-cache.size:10000}") long size,
+                                    @Value("${app.security.user-cache.ttl-seconds:300}") long ttlSeconds) {
         this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "user.details");
     }
 
     @Override
     public UserDetails loadUserByUsername(String username)
             throws UsernameNotFoundException {
 
+        UserDetails cached = cache.get(username, this::load);
+
+        // a copy: the authentication manager erases the password of what it is given
+        return org.springframework.security.core.userdetails.User
+                .withUserDetails(cached)
+                .build();
+    }
+
+    public void evict(String username) {
+        cache.invalidate(username);
+    }
+
+    private UserDetails load(String username) {
         Users user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
 
@@ -25,6 +58,7 @@ public class CustomUserDetailsService implements UserDetailsService {
                 .withUsername(user.getUsername())
                 .password(user.getPassword())
                 .roles(user.getRole().replace("ROLE_", ""))
+                .disabled(!user.isActive())
                 .build();
     }
 }
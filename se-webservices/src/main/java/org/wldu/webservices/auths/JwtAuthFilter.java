@@ -1,13 +1,18 @@
 package org.wldu.webservices.auths;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.io.IOException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -17,11 +22,19 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
+    private final TokenVersionRegistry tokenVersionRegistry;
+
+    // false: authorities always come from the (cached) user details, not from the token
+    private final boolean selfContained;
 
     public JwtAuthFilter(JwtUtil jwtUtil,
-                         CustomUserDetailsService userDetailsService) {
+                         CustomUserDetailsService userDetailsService,
+                         TokenVersionRegistry tokenVersionRegistry,
+                         @Value("${app.security.jwt.self-contained:true}") boolean selfContained) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.tokenVersionRegistry = tokenVersionRegistry;
+        this.selfContained = selfContained;
     }
 
     @Override
@@ -34,15 +47,27 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String jwt = authHeader.substring(7);
-            String username = jwtUtil.extractUsername(jwt);
+
+            // parsed and verified once per request (and answered from cache for a known token)
+            Claims claims;
+            try {
+                claims = jwtUtil.parseToken(jwt);
+            } catch (JwtException | IllegalArgumentException ex) {
+                // invalid or expired: continue unauthenticated and let the rules reject it
+                filterChain.doFilter(request, response);
+                return;
+            }
+            String username = claims.getSubject();
 
             if (username != null &&
                     SecurityContextHolder.getContext().getAuthentication() == null) {
 
-                UserDetails userDetails =
-                        userDetailsService.loadUserByUsername(username);
+                // tokens issued before roles were embedded still go through the user lookup
+                UserDetails userDetails = selfContained && claims.containsKey(JwtUtil.ROLE_CLAIM)
+                        ? fromClaims(claims, username)
+                        : fromUserDetails(username);
 
-                if (jwtUtil.isTokenValid(jwt, userDetails)) {
+                if (userDetails != null && jwtUtil.isTokenValid(claims, userDetails)) {
                     UsernamePasswordAuthenticationToken authToken =
                             new UsernamePasswordAuthenticationToken(
                                     userDetails, null, userDetails.getAuthorities());
@@ -56,5 +81,31 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(request, response);
     }
-}
 
+    // null when the account is gone or disabled
+    private UserDetails fromUserDetails(String username) {
+        try {
+            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            return userDetails.isEnabled() ? userDetails : null;
+        } catch (UsernameNotFoundException ex) {
+            return null;
+        }
+    }
+
+    // null when the account was deactivated or changed after the token was issued
+    private UserDetails fromClaims(Claims claims, String username) {
+        Boolean active = claims.get(JwtUtil.ACTIVE_CLAIM, Boolean.class);
+        Long version = claims.get(JwtUtil.VERSION_CLAIM, Long.class);
+
+        if (!Boolean.TRUE.equals(active) || version == null
+                || !tokenVersionRegistry.isCurrent(username, version)) {
+            return null;
+        }
+
+        return User.withUsername(username)
+                .password("")
+                // tokens issued before the claim was normalised carry the raw role
+                .authorities(JwtUtil.authority(claims.get(JwtUtil.ROLE_CLAIM, String.class)))
+                .build();
+    }
+}
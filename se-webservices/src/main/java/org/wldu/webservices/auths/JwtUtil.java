@@ -1,44 +1,143 @@
 package org.wldu.webservices.auths;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
 
     // Use at least 32 characters (256 bits) for HS256
     private final String SECRET_KEY = "mySuperSecretKeyForJWTs1234567890AB";
-    private final long EXPIRATION = 1000 * 60 * 60; // 1 hour
+    // clients renew through /api/auth/refresh
+    private final long accessTtlSeconds;
 
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+    // authorities travel in the token so authenticated requests need no user lookup
+    public static final String ROLE_CLAIM = "role";
+    public static final String ACTIVE_CLAIM = "active";
+    public static final String VERSION_CLAIM = "tv";
+
+    // both are immutable and thread-safe, so they are built once
+    private final Key signingKey = Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+    private final JwtParser parser = Jwts.parserBuilder()
+            .setSigningKey(signingKey)
+            .build();
+
+    // SHA-256 of the token -> verified claims, dropped when the token expires
+    private final Cache<String, Claims> verifiedTokens;
+    private final Timer verifyTimer;
+
+    public JwtUtil(MeterRegistry meterRegistry,
+                   @Value("${app.security.jwt.cache-size:10000}") long cacheSize,
+                   @Value("${app.security.jwt.access-ttl-seconds:900}") long accessTtlSeconds) {
+
+        this.accessTtlSeconds = accessTtlSeconds;
+
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new UntilTokenExpiry())
+                .recordStats()
+                .build();
+        this.verifyTimer = Timer.builder("jwt.verify")
+                .description("JWT signature verification and claims parsing (cache misses only)")
+                .register(meterRegistry);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt.claims");
     }
 
-    public String generateToken(String username) {
+    public String generateToken(Users user) {
         return Jwts.builder()
-                .setSubject(username)
+                .setSubject(user.getUsername())
+                .claim(ROLE_CLAIM, authority(user.getRole()))
+                .claim(ACTIVE_CLAIM, user.isActive())
+                .claim(VERSION_CLAIM, user.getTokenVersion())
                 .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .setExpiration(new Date(System.currentTimeMillis() + accessTtlSeconds * 1000))
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    // stored roles come as "ADMIN", "ROLE_ADMIN" or with stray spaces; hasRole() needs "ROLE_ADMIN"
+    public static String authority(String role) {
+        String name = role == null ? "" : role.trim();
+        return name.startsWith("ROLE_") ? name : "ROLE_" + name;
+    }
+
+    public long getAccessTokenTtlSeconds() {
+        return accessTtlSeconds;
+    }
+
+    /**
+     * Verified claims of the token. A token seen before is answered from the cache
+     * without checking the signature again; invalid tokens throw a JwtException and
+     * are never cached. The returned claims are shared and must not be modified.
+     */
+    public Claims parseToken(String token) {
+        return verifiedTokens.get(hash(token),
+                key -> verifyTimer.record(() -> parser.parseClaimsJws(token).getBody()));
+    }
+
     public String extractUsername(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        return parseToken(token).getSubject();
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        return extractUsername(token).equals(userDetails.getUsername());
+        return isTokenValid(parseToken(token), userDetails);
+    }
+
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername());
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    private static final class UntilTokenExpiry implements Expiry<String, Claims> {
+
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                return 0; // never reused
+            }
+            long millis = Math.max(expiration.getTime() - System.currentTimeMillis(), 0);
+            return TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
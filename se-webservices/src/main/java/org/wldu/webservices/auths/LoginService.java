@@ -0,0 +1,141 @@
+package org.wldu.webservices.auths;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.wldu.webservices.exception.BadRequestException;
+import org.wldu.webservices.exception.ForbiddenException;
+import org.wldu.webservices.exception.TooManyRequestsException;
+import org.wldu.webservices.exception.UnauthorizedException;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Password logins off the request threads.
+ * BCrypt runs on a small bounded pool; when its queue is full the login is
+ * rejected straight away (429) instead of tying up a Tomcat thread, so catalog
+ * reads keep flowing during a login storm.
+ */
+@Service
+public class LoginService {
+
+    private static final String INVALID_CREDENTIALS = "Invalid username or password";
+
+    private final UsersRepository usersRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final JwtUtil jwtUtil;
+    private final CustomUserDetailsService userDetailsService;
+    private final RefreshTokenService refreshTokenService;
+
+    private final ThreadPoolExecutor executor;
+
+    // hash compared against for unknown usernames so they take as long as a wrong password
+    private final String dummyHash;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter rejected;
+
+    public LoginService(UsersRepository usersRepository,
+                        PasswordEncoder passwordEncoder,
+                        JwtUtil jwtUtil,
+                        CustomUserDetailsService userDetailsService,
+                        RefreshTokenService refreshTokenService,
+                        MeterRegistry meterRegistry,
+                        @Value("${app.login.threads:0}") int threads,
+                        @Value("${app.login.queue-capacity:50}") int queueCapacity) {
+        this.usersRepository = usersRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.jwtUtil = jwtUtil;
+        this.userDetailsService = userDetailsService;
+        this.refreshTokenService = refreshTokenService;
+        this.meterRegistry = meterRegistry;
+
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "login-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        this.dummyHash = passwordEncoder.encode("not-a-real-password");
+
+        this.rejected = Counter.builder("auth.login.rejected")
+                .description("Logins refused because the password pool was saturated")
+                .register(meterRegistry);
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "login", List.of());
+    }
+
+    public CompletableFuture<AuthResponse> login(AuthRequest request) {
+
+        if (request.getUsername() == null || request.getPassword() == null) {
+            throw new BadRequestException("Username and password are required");
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return CompletableFuture
+                    .supplyAsync(() -> authenticate(request.getUsername(), request.getPassword()), executor)
+                    .whenComplete((response, ex) -> sample.stop(
+                            meterRegistry.timer("auth.login", "outcome", ex == null ? "success" : "failure")));
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            throw new TooManyRequestsException("Too many login attempts, please retry shortly");
+        }
+    }
+
+    private AuthResponse authenticate(String username, String password) {
+
+        // the single user read of the login; reused for the token claims and the response
+        Users user = usersRepository.findByUsername(username).orElse(null);
+
+        if (user == null) {
+            passwordEncoder.matches(password, dummyHash);
+            throw new UnauthorizedException(INVALID_CREDENTIALS);
+        }
+
+        if (!passwordEncoder.matches(password, user.getPassword())) {
+            throw new UnauthorizedException(INVALID_CREDENTIALS);
+        }
+
+        if (!user.isActive()) {
+            throw new ForbiddenException("Account is deactivated");
+        }
+
+        // stored with an older (cheaper) cost: rehash now that we have the plain password
+        if (passwordEncoder.upgradeEncoding(user.getPassword())) {
+            user.setPassword(passwordEncoder.encode(password));
+            user = usersRepository.save(user);
+            userDetailsService.evict(username);
+        }
+
+        return new AuthResponse(
+                jwtUtil.generateToken(user),
+                refreshTokenService.issue(user),
+                jwtUtil.getAccessTokenTtlSeconds(),
+                user
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,195 @@
+package org.wldu.webservices.auths;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.wldu.webservices.exception.UnauthorizedException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Rotating refresh tokens. A refresh costs one SHA-256 and, for a token issued
+ * by this instance, no database read: active token hashes are kept in memory.
+ * Presenting an already rotated token is treated as theft and revokes every
+ * token of that login (the family).
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private static final String INVALID = "Invalid refresh token";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UsersRepository usersRepository;
+    private final JwtUtil jwtUtil;
+    private final Duration refreshTtl;
+
+    // token hash -> active (not rotated, not revoked) token
+    private final Cache<String, ActiveToken> activeTokens;
+
+    record ActiveToken(Long id, Long userId, String familyId, LocalDateTime expiresAt) {
+    }
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+                               UsersRepository usersRepository,
+                               JwtUtil jwtUtil,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.security.jwt.refresh-ttl-days:14}") long refreshTtlDays,
+                               @Value("${app.security.jwt.refresh-cache-size:50000}") long cacheSize) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.usersRepository = usersRepository;
+        this.jwtUtil = jwtUtil;
+        this.refreshTtl = Duration.ofDays(refreshTtlDays);
+        this.activeTokens = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(refreshTtl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, activeTokens, "refresh.tokens");
+    }
+
+    /* =======================
+       ISSUE (LOGIN)
+       ======================= */
+    @Transactional
+    public String issue(Users user) {
+        return issue(user.getId(), UUID.randomUUID().toString());
+    }
+
+    /* =======================
+       ROTATE (REFRESH)
+       ======================= */
+
+    // family revocations must survive the 401 that follows them
+    @Transactional(noRollbackFor = UnauthorizedException.class)
+    public AuthResponse rotate(String rawToken) {
+
+        if (rawToken == null || rawToken.isBlank()) {
+            throw new UnauthorizedException(INVALID);
+        }
+
+        String hash = hash(rawToken);
+        LocalDateTime now = LocalDateTime.now();
+
+        ActiveToken current = activeTokens.getIfPresent(hash);
+        if (current == null) {
+            RefreshToken stored = refreshTokenRepository.findByTokenHash(hash)
+                    .orElseThrow(() -> new UnauthorizedException(INVALID));
+
+            if (stored.getRevokedAt() != null) {
+                throw reuseDetected(stored.getFamilyId(), now);
+            }
+            current = new ActiveToken(stored.getId(), stored.getUserId(),
+                    stored.getFamilyId(), stored.getExpiresAt());
+        }
+
+        activeTokens.invalidate(hash);
+
+        if (current.expiresAt().isBefore(now)) {
+            throw new UnauthorizedException("Refresh token expired, please log in again");
+        }
+
+        // a concurrent refresh with the same token already won
+        if (refreshTokenRepository.revoke(current.id(), now) == 0) {
+            throw reuseDetected(current.familyId(), now);
+        }
+
+        Users user = usersRepository.findById(current.userId()).orElse(null);
+        if (user == null || !user.isActive()) {
+            revokeFamily(current.familyId(), now);
+            throw new UnauthorizedException("Account is not active");
+        }
+
+        String next = issue(user.getId(), current.familyId());
+        return new AuthResponse(jwtUtil.generateToken(user), next, jwtUtil.getAccessTokenTtlSeconds(), user);
+    }
+
+    /* =======================
+       REVOKE
+       ======================= */
+    @Transactional
+    public void logout(String rawToken) {
+        if (rawToken == null || rawToken.isBlank()) {
+            return;
+        }
+        refreshTokenRepository.findByTokenHash(hash(rawToken))
+                .ifPresent(token -> revokeFamily(token.getFamilyId(), LocalDateTime.now()));
+    }
+
+    // password reset, deletion: no existing login of the user may refresh again
+    @Transactional
+    public void revokeAllForUser(Long userId) {
+        refreshTokenRepository.revokeAllForUser(userId, LocalDateTime.now());
+        activeTokens.asMap().values().removeIf(token -> token.userId().equals(userId));
+    }
+
+    @Scheduled(cron = "${app.security.jwt.refresh-purge-cron:0 30 3 * * *}")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = refreshTokenRepository.deleteExpired(LocalDateTime.now());
+        if (deleted > 0) {
+            log.info("Purged {} expired refresh tokens", deleted);
+        }
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private String issue(Long userId, String familyId) {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String raw = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        LocalDateTime now = LocalDateTime.now();
+        RefreshToken token = new RefreshToken();
+        token.setTokenHash(hash(raw));
+        token.setUserId(userId);
+        token.setFamilyId(familyId);
+        token.setCreatedAt(now);
+        token.setExpiresAt(now.plus(refreshTtl));
+
+        RefreshToken saved = refreshTokenRepository.save(token);
+        activeTokens.put(saved.getTokenHash(),
+                new ActiveToken(saved.getId(), userId, familyId, saved.getExpiresAt()));
+        return raw;
+    }
+
+    private UnauthorizedException reuseDetected(String familyId, LocalDateTime now) {
+        log.warn("Refresh token reuse detected, revoking family {}", familyId);
+        revokeFamily(familyId, now);
+        return new UnauthorizedException("Refresh token already used, please log in again");
+    }
+
+    private void revokeFamily(String familyId, LocalDateTime now) {
+        refreshTokenRepository.revokeFamily(familyId, now);
+        activeTokens.asMap().values().removeIf(token -> token.familyId().equals(familyId));
+    }
+
+    private static String hash(String rawToken) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(rawToken.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.wldu.webservices.auths;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Current token version per username. A token carries the version it was issued
+ * with ("tv" claim) and is rejected once the user's version has moved on, which
+ * happens on every change to the account (role, status, password, ...).
+ * Read from the user12 table and kept for a short TTL, so checking a token is
+ * usually a map lookup. UsersService updates this instance at once; a change
+ * made on another instance reaches it when the entry expires.
+ */
+@Component
+public class TokenVersionRegistry {
+
+    private final UsersRepository usersRepository;
+
+    // username -> token version; absent users are not cached and fail the check
+    private final Cache<String, Long> versions;
+
+    public TokenVersionRegistry(UsersRepository usersRepository,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.security.token-versions.size:10000}") long size,
+                                @Value("${app.security.token-versions.ttl-seconds:30}") long ttlSeconds) {
+        this.usersRepository = usersRepository;
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, versions, "token.versions");
+    }
+
+    public boolean isCurrent(String username, long tokenVersion) {
+        Long current = versions.get(username, key ->
+                usersRepository.findTokenVersionByUsername(key).orElse(null));
+        return current != null && current == tokenVersion;
+    }
+
+    public void update(String username, long tokenVersion) {
+        versions.put(username, tokenVersion);
+    }
+
+    public void evict(String username) {
+        versions.invalidate(username);
+    }
+}
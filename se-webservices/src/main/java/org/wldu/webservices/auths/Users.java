@@ -1,11 +1,16 @@
 package org.wldu.webservices.auths;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
 @Table(name = "user12")
 @Data
 @NoArgsConstructor
@@ -33,6 +38,11 @@ public class Users {
 
     @Column(nullable = false)
     private boolean active = true;
+
+    // bumped on every account change; tokens carrying an older version are rejected
+    @JsonIgnore
+    @Column(name = "token_version", nullable = false, columnDefinition = "bigint default 0")
+    private long tokenVersion = 0;
 }
 
 
@@ -1,11 +1,24 @@
 package org.wldu.webservices.auths;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
 public interface UsersRepository extends JpaRepository<Users, Long> {
+    // hit on every authenticated request; result ids are cached, rows come from the "users" region
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "users-by-username")
+    })
     Optional<Users> findByUsername(String username);
     boolean existsByUsername(String username);
+
+    @Query("select u.tokenVersion from Users u where u.username = :username")
+    Optional<Long> findTokenVersionByUsername(@Param("username") String username);
 }
 
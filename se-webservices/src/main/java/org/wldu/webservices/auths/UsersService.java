@@ -1,23 +1,50 @@
 package org.wldu.webservices.auths;
 
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.wldu.webservices.services.contracts.DashboardStatsService;
+import org.wldu.webservices.transaction.TransactionHooks;
 
 import java.util.List;
 
 @Service
 public class UsersService {
 
+    // the row lock orders concurrent changes to one account; each gets its own version
+    private static final String BUMP_TOKEN_VERSION_SQL = """
+            UPDATE user12 SET token_version = token_version + 1
+            WHERE id = ?
+            RETURNING token_version
+            """;
+
     private final UsersRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final DashboardStatsService dashboardStatsService;
+    private final TokenVersionRegistry tokenVersionRegistry;
+    private final CustomUserDetailsService userDetailsService;
+    private final RefreshTokenService refreshTokenService;
+    private final JdbcTemplate jdbcTemplate;
 
     public UsersService(UsersRepository userRepository,
-                        PasswordEncoder passwordEncoder) {
+                        PasswordEncoder passwordEncoder,
+                        DashboardStatsService dashboardStatsService,
+                        TokenVersionRegistry tokenVersionRegistry,
+                        CustomUserDetailsService userDetailsService,
+                        RefreshTokenService refreshTokenService,
+                        JdbcTemplate jdbcTemplate) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.dashboardStatsService = dashboardStatsService;
+        this.tokenVersionRegistry = tokenVersionRegistry;
+        this.userDetailsService = userDetailsService;
+        this.refreshTokenService = refreshTokenService;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     // ================= REGISTER =================
+    @Transactional
     public Users register(RegisterRequestDto request) {
         if (userRepository.existsByUsername(request.getUsername())) {
             throw new RuntimeException("Username already exists");
@@ -29,7 +56,9 @@ public class UsersService {
         user.setEmail(request.getEmail());
         user.setRole(resolveRole(request.getRole()));
         user.setActive(true);
-        return userRepository.save(user);
+        Users saved = userRepository.save(user);
+        dashboardStatsService.userRegistered();
+        return saved;
     }
 
     // ================= GET ALL =================
@@ -38,52 +67,64 @@ public class UsersService {
     }
 
     // ================= UPDATE =================
+    @Transactional
     public Users updateUser(Long id, RegisterRequestDto request) {
         Users user = userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
+        forget(user.getUsername());
         user.setUsername(request.getUsername());
         user.setPassword(passwordEncoder.encode(request.getPassword()));
         user.setRole(resolveRole(request.getRole()));
 
-        return userRepository.save(user);
+        Users saved = saveWithNewTokenVersion(user);
+        refreshTokenService.revokeAllForUser(saved.getId()); // password changed
+        return saved;
     }
 
     // ================= DELETE =================
+    @Transactional
     public void deleteUser(Long id) {
-        if (!userRepository.existsById(id)) {
-            throw new RuntimeException("User not found");
-        }
+        Users user = getUserById(id);
         userRepository.deleteById(id);
+        forget(user.getUsername());
+        refreshTokenService.revokeAllForUser(id);
+        dashboardStatsService.userDeleted();
     }
 
     // ================= ROLE MANAGEMENT =================
+    @Transactional
     public void assignRole(Long userId, String role) {
         Users user = getUserById(userId);
         user.setRole(resolveRole(role));
-        userRepository.save(user);
+        saveWithNewTokenVersion(user);
     }
 
+    @Transactional
     public void revokeRole(Long userId) {
         Users user = getUserById(userId);
         user.setRole("ROLE_USER"); // default role
-        userRepository.save(user);
+        saveWithNewTokenVersion(user);
     }
 
     // ================= ACCOUNT STATUS =================
+    @Transactional
     public void activateUser(Long userId) {
         Users user = getUserById(userId);
         user.setActive(true);
-        userRepository.save(user);
+        saveWithNewTokenVersion(user);
     }
 
+    @Transactional
     public void deactivateUser(Long userId) {
         Users user = getUserById(userId);
         user.setActive(false);
-        userRepository.save(user);
+        saveWithNewTokenVersion(user);
+        refreshTokenService.revokeAllForUser(userId);
     }
 
     // ================= REST PASSWORD  =================
+    @Transactional
     public void resetPassword(Long userId, String oldPassword, String newPassword) {
         Users user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -93,11 +134,35 @@ public class UsersService {
         }
 
         user.setPassword(passwordEncoder.encode(newPassword));
-        userRepository.save(user);
+        saveWithNewTokenVersion(user);
+        refreshTokenService.revokeAllForUser(userId);
     }
 
 
     // ================= HELPER METHODS =================
+
+    // a new token version invalidates every token issued before this change
+    private Users saveWithNewTokenVersion(Users user) {
+        Long version = jdbcTemplate.queryForObject(BUMP_TOKEN_VERSION_SQL, Long.class, user.getId());
+        user.setTokenVersion(version);
+        Users saved = userRepository.save(user);
+
+        String username = saved.getUsername();
+        TransactionHooks.afterCommit(() -> {
+            tokenVersionRegistry.update(username, version);
+            userDetailsService.evict(username);
+        });
+        return saved;
+    }
+
+    // drops everything cached for the username (renamed or deleted account) once that has committed
+    private void forget(String username) {
+        TransactionHooks.afterCommit(() -> {
+            tokenVersionRegistry.evict(username);
+            userDetailsService.evict(username);
+        });
+    }
+
     private Users getUserById(Long id) {
         return userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -116,12 +181,16 @@ public class UsersService {
         }
     }
 
+    @Transactional
     public void toggleActivation(Long userId) {
         Users user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         user.setActive(!user.isActive()); // switch state
-        userRepository.save(user);
+        saveWithNewTokenVersion(user);
+        if (!user.isActive()) {
+            refreshTokenService.revokeAllForUser(userId);
+        }
     }
 
 }
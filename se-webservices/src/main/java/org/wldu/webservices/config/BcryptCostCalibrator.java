@@ -0,0 +1,47 @@
+package org.wldu.webservices.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+/**
+ * Picks the BCrypt cost for this machine: the highest cost whose hash still
+ * fits the target latency. Every cost step doubles the work, so one measured
+ * cost is enough to extrapolate the others.
+ */
+final class BcryptCostCalibrator {
+
+    private static final Logger log = LoggerFactory.getLogger(BcryptCostCalibrator.class);
+
+    // 10 is the Spring Security default and the lowest cost we accept
+    static final int MIN_COST = 10;
+    static final int MAX_COST = 14;
+
+    private static final int SAMPLES = 3;
+
+    private BcryptCostCalibrator() {
+    }
+
+    static int calibrate(long targetMillis) {
+        String salt = BCrypt.gensalt(MIN_COST);
+
+        // warm-up, then the fastest of a few runs to keep GC/JIT noise out
+        BCrypt.hashpw("calibration", salt);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long started = System.nanoTime();
+            BCrypt.hashpw("calibration", salt);
+            best = Math.min(best, System.nanoTime() - started);
+        }
+
+        double millisAtMin = best / 1_000_000.0;
+        int cost = MIN_COST;
+        while (cost < MAX_COST && millisAtMin * (1L << (cost + 1 - MIN_COST)) <= targetMillis) {
+            cost++;
+        }
+
+        log.info("BCrypt cost {} selected (cost {} took {} ms, target {} ms)",
+                cost, MIN_COST, Math.round(millisAtMin), targetMillis);
+        return cost;
+    }
+}
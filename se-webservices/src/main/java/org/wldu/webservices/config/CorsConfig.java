@@ -17,6 +17,7 @@ public class CorsConfig {
                         .allowedOriginPatterns("http://localhost:5173") // frontend
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        .exposedHeaders("Idempotent-Replayed", "Retry-After")
                         .allowCredentials(true);
             }
         };
@@ -1,8 +1,11 @@
 package org.wldu.webservices.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -11,10 +14,17 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.wldu.webservices.auths.CustomUserDetailsService;
 import org.wldu.webservices.auths.JwtAuthFilter;
 import org.wldu.webservices.auths.JwtUtil;
+import org.wldu.webservices.auths.TokenVersionRegistry;
+import org.wldu.webservices.idempotency.IdempotencyFilter;
+import org.wldu.webservices.idempotency.IdempotencyStore;
+
+import java.util.List;
 
 @Configuration
 @EnableMethodSecurity
@@ -23,15 +33,20 @@ public class SecurityConfig {
     @Bean
     public JwtAuthFilter jwtAuthFilter(
             JwtUtil jwtUtil,
-            CustomUserDetailsService userDetailsService
+            CustomUserDetailsService userDetailsService,
+            TokenVersionRegistry tokenVersionRegistry,
+            @Value("${app.security.jwt.self-contained:true}") boolean selfContained
     ) {
-        return new JwtAuthFilter(jwtUtil, userDetailsService);
+        return new JwtAuthFilter(jwtUtil, userDetailsService, tokenVersionRegistry, selfContained);
     }
 
     @Bean
     public SecurityFilterChain filterChain(
             HttpSecurity http,
-            JwtAuthFilter jwtAuthFilter
+            JwtAuthFilter jwtAuthFilter,
+            IdempotencyStore idempotencyStore,
+            ObjectMapper objectMapper,
+            @Value("${app.idempotency.paths:/api/borrow/**,/api/holds/**}") List<String> idempotentPaths
     ) throws Exception {
 
         http
@@ -54,6 +69,7 @@ public class SecurityConfig {
                         .requestMatchers("/api/books/list").permitAll()
                         .requestMatchers("/uploads/**").permitAll()
                         .requestMatchers("/api/books/fetch").permitAll()
+                        .requestMatchers("/api/books/export").permitAll()
                         .requestMatchers("/api/digital-materials/**").permitAll()
                         .requestMatchers("/api/customers/**").permitAll()
                         .requestMatchers("/api/user/delete").hasRole("ADMIN")
@@ -81,19 +97,35 @@ public class SecurityConfig {
 
 
                         .requestMatchers("/admin/**").hasRole("ADMIN")
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .requestMatchers("/api/penalties/**")
                         .hasAnyRole("ADMIN", "LIBRARIAN")
 
                         .anyRequest().authenticated()
                 )
-                .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
+                // 401 for a missing or expired token (the frontend refreshes on it), 403 stays for roles
+                .exceptionHandling(ex -> ex
+                        .authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED))
+                )
+                .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class)
+                // not a bean: it must only run inside the chain, once the request is authorized
+                .addFilterAfter(new IdempotencyFilter(idempotencyStore, objectMapper, idempotentPaths),
+                        AuthorizationFilter.class);
 
         return http.build();
     }
 
+    // strength 0 calibrates the cost to the target latency at startup; stored hashes
+    // with a lower cost are upgraded on the next successful login
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(
+            @Value("${app.security.bcrypt.strength:0}") int strength,
+            @Value("${app.security.bcrypt.target-ms:250}") long targetMillis
+    ) {
+        return new BCryptPasswordEncoder(
+                strength > 0 ? strength : BcryptCostCalibrator.calibrate(targetMillis)
+        );
     }
 
     @Bean
@@ -1,26 +1,128 @@
 package org.wldu.webservices.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.wldu.webservices.websocket.WebSocketMetrics;
 
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * STOMP over websocket with bounded resources.
+ * Inbound and outbound channels run on fixed pools with bounded queues: a full
+ * inbound queue makes the receiving connection wait, a full outbound queue drops
+ * the frame. A session whose writes exceed the send time or buffer limit is
+ * closed instead of holding memory, and sessions that stop heart-beating are reaped.
+ */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final WebSocketMetrics metrics;
+
+    @Value("${app.websocket.inbound-threads:4}")
+    private int inboundThreads;
+
+    @Value("${app.websocket.inbound-queue:1000}")
+    private int inboundQueue;
+
+    @Value("${app.websocket.outbound-threads:8}")
+    private int outboundThreads;
+
+    @Value("${app.websocket.outbound-queue:10000}")
+    private int outboundQueue;
+
+    @Value("${app.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${app.websocket.send-buffer-size-kb:512}")
+    private int sendBufferSizeKb;
+
+    @Value("${app.websocket.message-size-kb:64}")
+    private int messageSizeKb;
+
+    @Value("${app.websocket.time-to-first-message-ms:30000}")
+    private int timeToFirstMessageMs;
+
+    @Value("${app.websocket.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    // the broker's own scheduler; lazy because it is created by the configuration this class feeds
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    public WebSocketConfig(WebSocketMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Autowired
+    public void setMessageBrokerTaskScheduler(@Lazy TaskScheduler taskScheduler) {
+        this.messageBrokerTaskScheduler = taskScheduler;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic", "/queue");
+        registry.enableSimpleBroker("/topic", "/queue")
+                .setHeartbeatValue(new long[]{heartbeatMs, heartbeatMs})
+                .setTaskScheduler(messageBrokerTaskScheduler);
         registry.setUserDestinationPrefix("/user");
         registry.setApplicationDestinationPrefixes("/app");
+        registry.configureBrokerChannel().interceptors(metrics.publishStamp());
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
-                .withSockJS();
+                .withSockJS()
+                .setHeartbeatTime(heartbeatMs);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        ThreadPoolTaskExecutor executor = channelExecutor("ws-inbound-", new ThreadPoolExecutor.CallerRunsPolicy());
+        registration.taskExecutor(executor)
+                .corePoolSize(inboundThreads)
+                .maxPoolSize(inboundThreads)
+                .queueCapacity(inboundQueue);
+        metrics.monitor("inbound", executor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        ThreadPoolTaskExecutor executor = channelExecutor("ws-outbound-", metrics.dropAndCount());
+        registration.taskExecutor(executor)
+                .corePoolSize(outboundThreads)
+                .maxPoolSize(outboundThreads)
+                .queueCapacity(outboundQueue);
+        registration.interceptors(metrics.fanOutTimer());
+        metrics.monitor("outbound", executor);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeKb * 1024)
+                .setMessageSizeLimit(messageSizeKb * 1024)
+                .setTimeToFirstMessage(timeToFirstMessageMs)
+                .addDecoratorFactory(metrics::countSlowSessions);
+    }
+
+    // pool sizes are applied by the channel registration
+    private static ThreadPoolTaskExecutor channelExecutor(String threadNamePrefix,
+                                                         RejectedExecutionHandler onFull) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setRejectedExecutionHandler(onFull);
+        return executor;
     }
-}
\ No newline at end of file
+}
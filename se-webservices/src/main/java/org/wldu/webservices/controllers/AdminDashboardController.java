@@ -1,55 +1,83 @@
 package org.wldu.webservices.controllers;
 
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
-import org.wldu.webservices.auths.UsersRepository;
-import org.wldu.webservices.repositories.BookRepository;
-import org.wldu.webservices.repositories.BorrowRepository;
-import org.wldu.webservices.repositories.CustomerRepository;
+import org.wldu.webservices.dto.OverdueScanReport;
+import org.wldu.webservices.services.contracts.DashboardStatsService;
+import org.wldu.webservices.services.contracts.OverdueScanner;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/admin") // class-level mapping to match frontend "/admin/dashboard"
 public class AdminDashboardController {
 
-    private final UsersRepository usersRepository;
-    private final BookRepository bookRepository;
-    private final BorrowRepository borrowRepository;
-    private final CustomerRepository customerRepository;
+    private final DashboardStatsService dashboardStatsService;
+    private final EntityManagerFactory entityManagerFactory;
+    private final OverdueScanner overdueScanner;
 
     public AdminDashboardController(
-            UsersRepository usersRepository,
-            BookRepository bookRepository,
-            CustomerRepository customerRepository,
-            BorrowRepository borrowRepository) {
-        this.usersRepository = usersRepository;
-        this.bookRepository = bookRepository;
-        this.borrowRepository = borrowRepository;
-        this.customerRepository=customerRepository;
+            DashboardStatsService dashboardStatsService,
+            EntityManagerFactory entityManagerFactory,
+            OverdueScanner overdueScanner) {
+        this.dashboardStatsService = dashboardStatsService;
+        this.entityManagerFactory = entityManagerFactory;
+        this.overdueScanner = overdueScanner;
     }
 
     /**
-     * Get admin dashboard stats: total users, total books, borrowed books, returned books
+     * Get admin dashboard stats: total users, total books, borrowed books, returned books.
+     * Served from memory; live updates are pushed on /topic/dashboard
      */
     @GetMapping("/dashboard")
     @PreAuthorize("hasRole('ADMIN')") // only accessible by admin
     public ResponseEntity<Map<String, Long>> getStats() {
-        long totalUsers = usersRepository.count();
-        long totalBooks = bookRepository.count();
-        long totalCustomers = customerRepository.count();
-        long borrowedBooks = borrowRepository.countByReturnedFalse(); // not returned yet
-        long returnedBooks = borrowRepository.countByReturnedTrue();  // already returned
-
-        Map<String, Long> stats = new HashMap<>();
-        stats.put("users", totalUsers);
-        stats.put("books", totalBooks);
-        stats.put("borrowed", borrowedBooks);
-        stats.put("returned", returnedBooks);
-        stats.put("customers", totalCustomers);
-
-        return ResponseEntity.ok(stats);
+        return ResponseEntity.ok(dashboardStatsService.snapshot());
+    }
+
+    /**
+     * Second-level cache statistics per region: hits, misses, puts and entries in memory
+     */
+    @GetMapping("/cache-stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Map<String, Object>>> getCacheStats() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        Map<String, Map<String, Object>> regions = new LinkedHashMap<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            // covers entity as well as query-result regions
+            CacheRegionStatistics regionStats = statistics.getCacheRegionStatistics(region);
+            if (regionStats == null) {
+                continue;
+            }
+
+            long hits = regionStats.getHitCount();
+            long misses = regionStats.getMissCount();
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            stats.put("puts", regionStats.getPutCount());
+            stats.put("entries", regionStats.getElementCountInMemory());
+            stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+            regions.put(region, stats);
+        }
+
+        return ResponseEntity.ok(regions);
+    }
+
+    /**
+     * Runs (or resumes) today's overdue scan now instead of waiting for the nightly job
+     */
+    @PostMapping("/overdue-scan")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<OverdueScanReport> runOverdueScan() {
+        return ResponseEntity.ok(overdueScanner.scan());
     }
 }
@@ -1,12 +1,21 @@
 package org.wldu.webservices.controllers;
 
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.pagination.KeysetPage;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.wldu.webservices.dto.BookImportReport;
+import org.wldu.webservices.services.contracts.BookExportService;
+import org.wldu.webservices.services.contracts.BookImportService;
 import org.wldu.webservices.services.contracts.BookService;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,9 +25,15 @@ import java.util.Map;
 public class BookController {
 
     private final BookService bookService;
+    private final BookExportService bookExportService;
+    private final BookImportService bookImportService;
 
-    public BookController(BookService bookService) {
+    public BookController(BookService bookService,
+                          BookExportService bookExportService,
+                          BookImportService bookImportService) {
         this.bookService = bookService;
+        this.bookExportService = bookExportService;
+        this.bookImportService = bookImportService;
     }
 
     @GetMapping("/fetch")
@@ -26,6 +41,24 @@ public class BookController {
         return bookService.getAllBooks();
     }
 
+    // Whole catalog as NDJSON (default) or CSV, streamed row by row
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportBooks(
+            @RequestParam(defaultValue = "ndjson") String format
+    ) {
+
+        if ("csv".equalsIgnoreCase(format)) {
+            return ResponseEntity.ok()
+                    .contentType(new MediaType("text", "csv"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"books.csv\"")
+                    .body(bookExportService::writeCsv);
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(bookExportService::writeNdjson);
+    }
+
     @GetMapping("/list")
     public Map<String, Object> getBookList(
             @RequestParam(required = false) String search,
@@ -33,11 +66,23 @@ public class BookController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "title") String sortBy,
             @RequestParam(defaultValue = "asc") String sortDir,
-            @RequestParam(defaultValue = "1") int draw
+            @RequestParam(defaultValue = "1") int draw,
+            @RequestParam(defaultValue = "title") String mode,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields
     ) {
 
-        Page<Book> bookPage =
-                bookService.getBooks(search, page, size, sortBy, sortDir);
+        // cursor present (empty for the first page): keyset pagination
+        if (cursor != null) {
+            KeysetPage<Map<String, Object>> keyset =
+                    bookService.getBooksAfter(search, cursor, size, sortBy, sortDir, fields);
+            return keysetResponse(keyset, bookService.countBooks(search), size, draw);
+        }
+
+        // mode=fulltext: ranked search over title, author, isbn, category and description
+        Page<Map<String, Object>> bookPage = "fulltext".equalsIgnoreCase(mode) && search != null && !search.isBlank()
+                ? bookService.searchBooks(search, page, size, fields)
+                : bookService.getBooks(search, page, size, sortBy, sortDir, fields);
 
         Map<String, Object> response = new HashMap<>();
 
@@ -52,6 +97,22 @@ public class BookController {
         return response;
     }
 
+    private Map<String, Object> keysetResponse(KeysetPage<?> keyset, long total, int size, int draw) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        response.put("draw", draw);
+        response.put("data", keyset.content());
+        response.put("recordsTotal", total);
+        response.put("recordsFiltered", total);
+        response.put("totalPages", (total + size - 1) / size);
+        response.put("pageSize", size);
+        response.put("nextCursor", keyset.nextCursor());
+        response.put("hasMore", keyset.hasMore());
+
+        return response;
+    }
+
 
     @CrossOrigin(origins = "http://localhost:5173")
     @PostMapping("/addbook")
@@ -61,6 +122,21 @@ public class BookController {
         return ResponseEntity.ok(created);
     }
 
+    // Bulk upsert on isbn; body is a CSV file with a header row or a JSON array of books
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.APPLICATION_JSON_VALUE})
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BookImportReport> importBooks(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body
+    ) throws IOException {
+
+        BookImportReport report = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.APPLICATION_JSON)
+                ? bookImportService.importJson(body)
+                : bookImportService.importCsv(body);
+
+        return ResponseEntity.ok(report);
+    }
+
     @PutMapping("/update/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Book> updateBook(@PathVariable Long id, @RequestBody Book updatedBook) {
@@ -1,12 +1,20 @@
 package org.wldu.webservices.controllers;
 
+import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.wldu.webservices.dto.BatchCirculationRequest;
+import org.wldu.webservices.dto.BatchCirculationResult;
+import org.wldu.webservices.dto.BorrowRecordRow;
 import org.wldu.webservices.entities.BorrowBook;
 import org.wldu.webservices.services.contracts.BorrowService;
 
+import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/borrow")
@@ -59,11 +67,55 @@ public class BorrowController {
         }
     }
 
+    // circulation desk: several books for one customer in one call, results per book
+    @PostMapping("/batch/checkout")
+    @PreAuthorize("hasAnyRole('ADMIN','LIBRARIAN')")
+    public ResponseEntity<BatchCirculationResult> batchCheckout(@RequestBody BatchCirculationRequest request) {
+        return ResponseEntity.ok(borrowService.borrowBooks(request));
+    }
+
+    @PostMapping("/batch/return")
+    @PreAuthorize("hasAnyRole('ADMIN','LIBRARIAN')")
+    public ResponseEntity<BatchCirculationResult> batchReturn(@RequestBody BatchCirculationRequest request) {
+        return ResponseEntity.ok(borrowService.returnBooks(request));
+    }
+
     @GetMapping("/all")
     public ResponseEntity<List<BorrowBook>> getAll() {
         return ResponseEntity.ok(borrowService.getAllBorrowedBooks());
     }
 
+    // Paged circulation desk listing: flat rows, filters on returned / overdue / borrow date range
+    @GetMapping("/list")
+    public Map<String, Object> getBorrowList(
+            @RequestParam(required = false) Boolean returned,
+            @RequestParam(required = false) Boolean overdue,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Long customerId,
+            @RequestParam(required = false) Long bookId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "1") int draw
+    ) {
+
+        Page<BorrowRecordRow> borrowPage = borrowService.getBorrowRecords(
+                returned, overdue, from, to, customerId, bookId, page, size
+        );
+
+        Map<String, Object> response = new HashMap<>();
+
+        response.put("draw", draw);
+        response.put("data", borrowPage.getContent());
+        response.put("recordsTotal", borrowPage.getTotalElements());
+        response.put("recordsFiltered", borrowPage.getTotalElements());
+        response.put("currentPage", borrowPage.getNumber());
+        response.put("totalPages", borrowPage.getTotalPages());
+        response.put("pageSize", borrowPage.getSize());
+
+        return response;
+    }
+
     @GetMapping("/customers/{customerId}")
     public ResponseEntity<List<BorrowBook>> getByCustomer(@PathVariable Long customerId) {
         return ResponseEntity.ok(borrowService.getBorrowedBooksByCustomer(customerId));
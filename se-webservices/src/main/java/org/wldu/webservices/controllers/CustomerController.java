@@ -2,10 +2,15 @@ package org.wldu.webservices.controllers;
 
 import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.wldu.webservices.dto.CustomerBalanceView;
+import org.wldu.webservices.dto.DebtorRow;
 import org.wldu.webservices.entities.Book;
 import org.wldu.webservices.entities.Customer;
+import org.wldu.webservices.pagination.KeysetPage;
 import org.wldu.webservices.services.contracts.CustomerService;
+import org.wldu.webservices.services.contracts.PenaltyBalanceService;
 
 import java.util.HashMap;
 import java.util.List;
@@ -16,9 +21,12 @@ import java.util.Map;
 public class CustomerController {
 
     private final CustomerService customerService;
+    private final PenaltyBalanceService penaltyBalanceService;
 
-    public CustomerController(CustomerService customerService) {
+    public CustomerController(CustomerService customerService,
+                              PenaltyBalanceService penaltyBalanceService) {
         this.customerService = customerService;
+        this.penaltyBalanceService = penaltyBalanceService;
     }
 
     // Add user
@@ -42,11 +50,20 @@ public class CustomerController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "name") String sortBy,
             @RequestParam(defaultValue = "asc") String sortDir,
-            @RequestParam(defaultValue = "1") int draw
+            @RequestParam(defaultValue = "1") int draw,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields
     ) {
 
-        Page<Customer> customerPage =
-                customerService.getCustomers(search, page, size, sortBy, sortDir);
+        // cursor present (empty for the first page): keyset pagination
+        if (cursor != null) {
+            KeysetPage<Map<String, Object>> keyset =
+                    customerService.getCustomersAfter(search, cursor, size, sortBy, sortDir, fields);
+            return keysetResponse(keyset, customerService.countCustomers(search), size, draw);
+        }
+
+        Page<Map<String, Object>> customerPage =
+                customerService.getCustomers(search, page, size, sortBy, sortDir, fields);
 
         Map<String, Object> response = new HashMap<>();
 
@@ -61,12 +78,42 @@ public class CustomerController {
         return response;
     }
 
+    private Map<String, Object> keysetResponse(KeysetPage<?> keyset, long total, int size, int draw) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        response.put("draw", draw);
+        response.put("data", keyset.content());
+        response.put("recordsTotal", total);
+        response.put("recordsFiltered", total);
+        response.put("totalPages", (total + size - 1) / size);
+        response.put("pageSize", size);
+        response.put("nextCursor", keyset.nextCursor());
+        response.put("hasMore", keyset.hasMore());
+
+        return response;
+    }
+
     // Get user by ID
     @GetMapping("/{id}")
     public ResponseEntity<Customer> getCustomer(@PathVariable Long id) {
         return ResponseEntity.ok(customerService.getCustmer(id));
     }
 
+    // Outstanding fines, read from the balance ledger
+    @GetMapping("/{id}/balance")
+    @PreAuthorize("hasAnyRole('ADMIN','LIBRARIAN')")
+    public ResponseEntity<CustomerBalanceView> getBalance(@PathVariable Long id) {
+        return ResponseEntity.ok(penaltyBalanceService.getBalance(id));
+    }
+
+    // Customers owing the most, largest balance first
+    @GetMapping("/debtors")
+    @PreAuthorize("hasAnyRole('ADMIN','LIBRARIAN')")
+    public List<DebtorRow> getTopDebtors(@RequestParam(defaultValue = "10") int limit) {
+        return penaltyBalanceService.topDebtors(limit);
+    }
+
     // Update user
     @PutMapping("/{id}")
     public ResponseEntity<Customer> updateCustomer(
@@ -0,0 +1,48 @@
+package org.wldu.webservices.controllers;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.wldu.webservices.entities.BookHold;
+import org.wldu.webservices.services.contracts.HoldService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/holds")
+public class HoldController {
+
+    private final HoldService holdService;
+
+    public HoldController(HoldService holdService) {
+        this.holdService = holdService;
+    }
+
+    // queue a customer for a book with no copy left; they are notified when one is set aside
+    @PostMapping
+    @PreAuthorize("hasAnyRole('ADMIN','LIBRARIAN')")
+    public ResponseEntity<BookHold> placeHold(
+            @RequestParam Long customerId,
+            @RequestParam Long bookId
+    ) {
+        return ResponseEntity.ok(holdService.placeHold(customerId, bookId));
+    }
+
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasAnyRole('ADMIN','LIBRARIAN')")
+    public ResponseEntity<Void> cancelHold(@PathVariable Long id) {
+        holdService.cancelHold(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    // waiting and ready holds of a book, in queue order
+    @GetMapping("/book/{bookId}")
+    public ResponseEntity<List<BookHold>> getQueue(@PathVariable Long bookId) {
+        return ResponseEntity.ok(holdService.getQueue(bookId));
+    }
+
+    @GetMapping("/customer/{customerId}")
+    public ResponseEntity<List<BookHold>> getCustomerHolds(@PathVariable Long customerId) {
+        return ResponseEntity.ok(holdService.getCustomerHolds(customerId));
+    }
+}
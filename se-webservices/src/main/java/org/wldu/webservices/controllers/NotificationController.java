@@ -2,11 +2,19 @@ package org.wldu.webservices.controllers;
 
 
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.wldu.webservices.dto.BroadcastRequest;
+import org.wldu.webservices.dto.MarkReadRequest;
+import org.wldu.webservices.dto.MarkReadResult;
+import org.wldu.webservices.dto.NotificationView;
 import org.wldu.webservices.entities.Notification;
+import org.wldu.webservices.entities.NotificationRole;
+import org.wldu.webservices.pagination.KeysetPage;
 import org.wldu.webservices.services.contracts.NotificationService;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/notifications")
@@ -28,16 +36,59 @@ public class NotificationController {
         );
     }
 
+    // everyone with the role; pushed once on /topic/notifications/role/{role}
+    @PreAuthorize("hasAnyRole('ADMIN','LIBRARIAN')")
+    @PostMapping("/broadcast")
+    public ResponseEntity<Notification> broadcast(@RequestBody BroadcastRequest request) {
+        return ResponseEntity.ok(notificationService.broadcast(request));
+    }
+
+    @GetMapping("/role/{role}")
+    public ResponseEntity<List<Notification>> getRoleBroadcasts(@PathVariable NotificationRole role) {
+        return ResponseEntity.ok(
+                notificationService.getRoleBroadcasts(role)
+        );
+    }
+
     @GetMapping("/customer/{customerId}")
-    public ResponseEntity<List<Notification>> getUserNotifications(@PathVariable Long customerId) {
+    public ResponseEntity<List<NotificationView>> getUserNotifications(@PathVariable Long customerId) {
         return ResponseEntity.ok(
                 notificationService.getCustomerNotifications(customerId)
         );
     }
 
+    // newest first; pass nextCursor of the previous page to continue
+    @GetMapping("/customer/{customerId}/inbox")
+    public ResponseEntity<KeysetPage<NotificationView>> getInbox(
+            @PathVariable Long customerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(
+                notificationService.getInbox(customerId, cursor, size)
+        );
+    }
+
+    @GetMapping("/customer/{customerId}/unread-count")
+    public ResponseEntity<Map<String, Long>> getUnreadCount(@PathVariable Long customerId) {
+        return ResponseEntity.ok(
+                Map.of("unread", notificationService.getUnreadCount(customerId))
+        );
+    }
+
+    @PostMapping("/customer/{customerId}/read")
+    public ResponseEntity<MarkReadResult> markAsRead(@PathVariable Long customerId,
+                                                     @RequestBody MarkReadRequest request) {
+        return ResponseEntity.ok(
+                notificationService.markAsRead(customerId, request)
+        );
+    }
+
+    // recipientId: required for a broadcast, whose read state is per recipient
     @PostMapping("/read/{id}")
-    public ResponseEntity<Void> markAsRead(@PathVariable Long id) {
-        notificationService.markAsRead(id);
+    public ResponseEntity<Void> markAsRead(@PathVariable Long id,
+                                           @RequestParam(required = false) Long recipientId) {
+        notificationService.markAsRead(id, recipientId);
         return ResponseEntity.ok().build();
     }
 }
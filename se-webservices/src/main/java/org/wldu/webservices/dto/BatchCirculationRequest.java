@@ -0,0 +1,14 @@
+package org.wldu.webservices.dto;
+
+import java.util.List;
+
+/**
+ * Several books checked out to (or returned by) one customer at the desk.
+ * days is only read by checkout and defaults to 14.
+ */
+public record BatchCirculationRequest(
+        Long customerId,
+        List<Long> bookIds,
+        Integer days
+) {
+}
@@ -0,0 +1,19 @@
+package org.wldu.webservices.dto;
+
+import java.util.List;
+
+/**
+ * Per-book results of a batch, in request order.
+ */
+public record BatchCirculationResult(
+        Long customerId,
+        int succeeded,
+        int failed,
+        List<BatchItemResult> items
+) {
+
+    public static BatchCirculationResult of(Long customerId, List<BatchItemResult> items) {
+        int succeeded = (int) items.stream().filter(BatchItemResult::succeeded).count();
+        return new BatchCirculationResult(customerId, succeeded, items.size() - succeeded, items);
+    }
+}
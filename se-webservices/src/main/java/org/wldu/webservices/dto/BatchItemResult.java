@@ -0,0 +1,26 @@
+package org.wldu.webservices.dto;
+
+/**
+ * Outcome for one book of a batch checkout or return; borrowId is set when it succeeded.
+ */
+public record BatchItemResult(
+        Long bookId,
+        Status status,
+        Long borrowId
+) {
+
+    public enum Status {
+        BORROWED,
+        RETURNED,
+        // checkout: no copy left / book id unknown / listed twice in the request
+        UNAVAILABLE,
+        NOT_FOUND,
+        DUPLICATE,
+        // return: the customer has no open loan of this book
+        NOT_BORROWED
+    }
+
+    public boolean succeeded() {
+        return status == Status.BORROWED || status == Status.RETURNED;
+    }
+}
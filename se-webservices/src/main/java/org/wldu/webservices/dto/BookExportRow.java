@@ -0,0 +1,57 @@
+package org.wldu.webservices.dto;
+
+import org.wldu.webservices.entities.Book;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Flat, relationship-free view of a book used by the catalog export,
+ * so serialising a row never touches the lazy borrowedBooks collection.
+ */
+public record BookExportRow(
+        Long id,
+        String title,
+        String author,
+        String isbn,
+        String category,
+        Integer publishedYear,
+        String description,
+        BigDecimal price,
+        String coverImageUrl,
+        Integer totalCopies,
+        Integer copiesAvailable,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt
+) {
+
+    public static final String[] CSV_HEADER = {
+            "id", "title", "author", "isbn", "category", "publishedYear", "description",
+            "price", "coverImageUrl", "totalCopies", "copiesAvailable", "createdAt", "updatedAt"
+    };
+
+    public static BookExportRow from(Book book) {
+        return new BookExportRow(
+                book.getId(),
+                book.getTitle(),
+                book.getAuthor(),
+                book.getIsbn(),
+                book.getCategory(),
+                book.getPublishedYear(),
+                book.getDescription(),
+                book.getPrice(),
+                book.getCoverImageUrl(),
+                book.getTotalCopies(),
+                book.getCopiesAvailable(),
+                book.getCreatedAt(),
+                book.getUpdatedAt()
+        );
+    }
+
+    public Object[] csvValues() {
+        return new Object[]{
+                id, title, author, isbn, category, publishedYear, description,
+                price, coverImageUrl, totalCopies, copiesAvailable, createdAt, updatedAt
+        };
+    }
+}
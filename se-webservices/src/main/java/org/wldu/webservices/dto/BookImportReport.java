@@ -0,0 +1,21 @@
+package org.wldu.webservices.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk book import: counts, per-row errors and throughput.
+ * Only the first errors are listed; {@code errorsTruncated} tells whether more were dropped.
+ */
+public record BookImportReport(
+        long received,
+        long upserted,
+        long failed,
+        List<RowError> errors,
+        boolean errorsTruncated,
+        long elapsedMillis,
+        double rowsPerSecond
+) {
+
+    public record RowError(long row, String isbn, String message) {
+    }
+}
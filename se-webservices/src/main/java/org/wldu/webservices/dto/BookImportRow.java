@@ -0,0 +1,23 @@
+package org.wldu.webservices.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.math.BigDecimal;
+
+/**
+ * One incoming row of a bulk book import (CSV line or JSON array element).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record BookImportRow(
+        String title,
+        String author,
+        String isbn,
+        String category,
+        Integer publishedYear,
+        String description,
+        BigDecimal price,
+        String coverImageUrl,
+        Integer totalCopies,
+        Integer copiesAvailable
+) {
+}
@@ -0,0 +1,51 @@
+package org.wldu.webservices.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of the circulation desk listing: the loan with the customer and book
+ * columns it shows, selected in the same query instead of loading both entities.
+ */
+public record BorrowRecordRow(
+        Long id,
+        Long customerId,
+        String customerName,
+        String customerEmail,
+        Long bookId,
+        String bookTitle,
+        String bookIsbn,
+        LocalDateTime borrowDate,
+        LocalDateTime returnDate,
+        boolean returned,
+        boolean overdue,
+        Integer brokenPages,
+        Double latePenalty,
+        Boolean lost,
+        Double lostPrice,
+        Boolean status
+) {
+
+    // used by the Criteria constructor expression; overdue is derived from the due date
+    public BorrowRecordRow(
+            Long id,
+            Long customerId,
+            String customerName,
+            String customerEmail,
+            Long bookId,
+            String bookTitle,
+            String bookIsbn,
+            LocalDateTime borrowDate,
+            LocalDateTime returnDate,
+            boolean returned,
+            Integer brokenPages,
+            Double latePenalty,
+            Boolean lost,
+            Double lostPrice,
+            Boolean status
+    ) {
+        this(id, customerId, customerName, customerEmail, bookId, bookTitle, bookIsbn,
+                borrowDate, returnDate, returned,
+                !returned && returnDate != null && returnDate.isBefore(LocalDateTime.now()),
+                brokenPages, latePenalty, lost, lostPrice, status);
+    }
+}
@@ -0,0 +1,13 @@
+package org.wldu.webservices.dto;
+
+import org.wldu.webservices.entities.NotificationRole;
+
+/**
+ * A notification for everyone with the given role.
+ */
+public record BroadcastRequest(
+        NotificationRole role,
+        String title,
+        String message
+) {
+}
@@ -0,0 +1,20 @@
+package org.wldu.webservices.dto;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * A circulation event as published on /topic/circulation by the outbox relay.
+ * details carries the type-specific values (due date, late penalty, amount due, ...).
+ */
+public record CirculationEvent(
+        Long id,
+        String type,
+        Long borrowId,
+        Long customerId,
+        Long bookId,
+        String bookTitle,
+        Map<String, Object> details,
+        LocalDateTime createdAt
+) {
+}
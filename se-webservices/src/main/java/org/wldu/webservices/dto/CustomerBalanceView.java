@@ -0,0 +1,16 @@
+package org.wldu.webservices.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Outstanding fines of a customer: the unresolved late, broken-page and lost-book charges.
+ * openItems is the number of loans that still carry a charge.
+ */
+public record CustomerBalanceView(
+        Long customerId,
+        BigDecimal outstanding,
+        int openItems,
+        LocalDateTime updatedAt
+) {
+}
@@ -0,0 +1,20 @@
+package org.wldu.webservices.dto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Dashboard push: what changed since the last push and the counters after it.
+ */
+public record DashboardUpdate(
+        Map<String, Long> changes,
+        Map<String, Long> stats
+) {
+
+    // two updates not pushed yet: the changes add up, the newer counters win
+    public static DashboardUpdate merge(DashboardUpdate older, DashboardUpdate newer) {
+        Map<String, Long> changes = new LinkedHashMap<>(older.changes());
+        newer.changes().forEach((key, delta) -> changes.merge(key, delta, Long::sum));
+        return new DashboardUpdate(changes, newer.stats());
+    }
+}
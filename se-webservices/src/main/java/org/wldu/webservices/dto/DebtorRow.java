@@ -0,0 +1,15 @@
+package org.wldu.webservices.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * One row of the top debtors list.
+ */
+public record DebtorRow(
+        Long customerId,
+        String name,
+        String email,
+        BigDecimal outstanding,
+        int openItems
+) {
+}
@@ -0,0 +1,12 @@
+package org.wldu.webservices.dto;
+
+import java.util.List;
+
+/**
+ * Notifications to mark read: either the listed ids, or everything up to and including upToId.
+ */
+public record MarkReadRequest(
+        List<Long> ids,
+        Long upToId
+) {
+}
@@ -0,0 +1,10 @@
+package org.wldu.webservices.dto;
+
+/**
+ * Outcome of a mark-read: how many notifications changed state and the unread count after it.
+ */
+public record MarkReadResult(
+        long marked,
+        long unread
+) {
+}
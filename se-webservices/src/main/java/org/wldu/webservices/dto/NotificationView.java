@@ -0,0 +1,19 @@
+package org.wldu.webservices.dto;
+
+import org.wldu.webservices.entities.NotificationRole;
+
+import java.time.LocalDateTime;
+
+/**
+ * A notification as one recipient sees it; for a broadcast, read is that recipient's own state.
+ */
+public record NotificationView(
+        Long id,
+        String title,
+        String message,
+        NotificationRole receiverRole,
+        Long receiverCustomerId,
+        boolean read,
+        LocalDateTime createdAt
+) {
+}
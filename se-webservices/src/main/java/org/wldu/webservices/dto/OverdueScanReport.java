@@ -0,0 +1,15 @@
+package org.wldu.webservices.dto;
+
+/**
+ * Outcome of one overdue scan run (or of the part of it done by this call when resumed).
+ */
+public record OverdueScanReport(
+        String status,
+        boolean resumed,
+        long scanned,
+        long penaltiesUpdated,
+        long remindersSent,
+        long elapsedMillis,
+        double rowsPerSecond
+) {
+}
@@ -0,0 +1,41 @@
+package org.wldu.webservices.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A customer's place in the queue for a book that had no copy left.
+ * Queue order is the id order of the WAITING holds of a book.
+ */
+@Entity
+@Table(name = "book_holds")
+@Getter
+@Setter
+@NoArgsConstructor
+public class BookHold {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private HoldStatus status = HoldStatus.WAITING;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    // set when a copy is put aside; the hold expires if not picked up by expiresAt
+    private LocalDateTime readyAt;
+    private LocalDateTime expiresAt;
+}
@@ -1,5 +1,6 @@
 package org.wldu.webservices.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -20,12 +21,15 @@ public class BorrowBook {
     @Version
     private Long version;
 
-    @ManyToOne
+    // lazy: listings load both through an entity graph in one query
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "customer_id")
+    @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
     private Customer customer;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "book_id")
+    @JsonIgnoreProperties({"borrowedBooks", "hibernateLazyInitializer", "handler"})
     private Book book;
 
     private LocalDateTime borrowDate;
@@ -35,6 +39,8 @@ public class BorrowBook {
     // ===== PENALTY FIELDS =====
     private Integer brokenPages = 0;
     private Double latePenalty = 0.0;
+    // set when the late fee was changed by hand; automatic charging leaves it alone
+    private boolean latePenaltyManual = false;
     private Boolean lost = false;
     private Double lostPrice = 0.0;
     private Boolean status = false; // false=Pending, true=Resolved
@@ -0,0 +1,9 @@
+package org.wldu.webservices.entities;
+
+public enum HoldStatus {
+    WAITING,    // in the queue for the book
+    READY,      // a returned copy is set aside for the customer
+    FULFILLED,  // the customer borrowed the set-aside copy
+    CANCELLED,
+    EXPIRED     // not picked up in time; the copy went to the next holder
+}
@@ -0,0 +1,43 @@
+package org.wldu.webservices.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a batch job over a keyset-ordered table. Written in the same
+ * transaction as each batch, so a job restarted after a crash carries on
+ * after the last committed id instead of starting over.
+ */
+@Entity
+@Table(name = "job_checkpoints")
+@Getter
+@Setter
+@NoArgsConstructor
+public class JobCheckpoint {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+
+    @Id
+    @Column(name = "job_name", length = 64)
+    private String jobName;
+
+    // business date of the run and the instant all of its computations use
+    private LocalDate runDate;
+    private LocalDateTime asOf;
+
+    private Long lastId = 0L;
+    private long processed;
+    private long updated;
+
+    @Column(length = 16)
+    private String status;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+}
@@ -1,10 +1,14 @@
 package org.wldu.webservices.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import lombok.Data;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "materials")
 @Data
 @Table(name = "materials")
 public class Materials {
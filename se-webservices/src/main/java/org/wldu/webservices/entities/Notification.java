@@ -38,7 +38,7 @@ public class Notification {
     public NotificationRole getReceiverRole() { return receiverRole; }
     public void setReceiverRole(NotificationRole receiverRole) { this.receiverRole = receiverRole; }
     public Long getReceiverCustomerId() { return receiverCustomerId; }
-    public void setReceiverCustomerId(Long receiverUserId) { this.receiverCustomerId = receiverCustomerId; }
+    public void setReceiverCustomerId(Long receiverCustomerId) { this.receiverCustomerId = receiverCustomerId; }
     public boolean isRead() { return read; }
     public void setRead(boolean read) { this.read = read; }
     public LocalDateTime getCreatedAt() { return createdAt; }
@@ -1,6 +1,7 @@
 package org.wldu.webservices.exception;
 
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -68,6 +69,22 @@ public class GlobalExceptionHandler {
                 ));
     }
 
+    // Overload shedding (login executor full); clients should back off and retry
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<ApiError> handleTooManyRequests(
+            TooManyRequestsException ex,
+            HttpServletRequest request) {
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ApiError.of(
+                        429,
+                        "TOO_MANY_REQUESTS",
+                        ex.getMessage(),
+                        request.getRequestURI()
+                ));
+    }
+
     // Validation errors
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ApiError> handleValidation(
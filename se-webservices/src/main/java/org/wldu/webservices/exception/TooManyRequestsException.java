@@ -0,0 +1,7 @@
+package org.wldu.webservices.exception;
+
+public class TooManyRequestsException extends RuntimeException {
+    public TooManyRequestsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,244 @@
+package org.wldu.webservices.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.wldu.webservices.exception.ApiError;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Honours the Idempotency-Key header on circulation mutations.
+ * The first request with a key runs and its response is stored; a retry with the
+ * same key and the same request gets that response back (Idempotent-Replayed: true)
+ * without reaching the controller, so a slow checkout retried by the desk can
+ * never take a second copy. A retry while the first is still running gets 409,
+ * the same key on a different request 422. A request that failed is run again
+ * on retry only if it committed nothing; otherwise its failure is the stored response.
+ * Runs after authorization, and keys are scoped to the authenticated user.
+ */
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Set<String> MUTATING_METHODS = Set.of("POST", "PUT", "PATCH", "DELETE");
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final IdempotencyStore store;
+    private final ObjectMapper objectMapper;
+    private final List<String> paths;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    public IdempotencyFilter(IdempotencyStore store, ObjectMapper objectMapper, List<String> paths) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+        this.paths = List.copyOf(paths);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (request.getHeader(HEADER) == null || !MUTATING_METHODS.contains(request.getMethod())) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return paths.stream().noneMatch(pattern -> pathMatcher.match(pattern, path));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        String key = request.getHeader(HEADER).trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            reject(request, response, 400, "BAD_REQUEST",
+                    HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+
+        // form parameters are parsed from the body before it is read here, so they stay available
+        request.getParameterMap();
+        byte[] body = request.getInputStream().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            reject(request, response, 413, "PAYLOAD_TOO_LARGE",
+                    "Request body too large for an idempotent request");
+            return;
+        }
+        HttpServletRequest cachedRequest = new CachedBodyRequest(request, body);
+
+        String keyHash = sha256(principal() + "\n" + key);
+        String fingerprint = fingerprint(cachedRequest, body);
+
+        IdempotencyStore.Decision decision = store.begin(keyHash, fingerprint);
+        switch (decision.outcome()) {
+            case REPLAY -> replay(decision.entry(), response);
+            case IN_PROGRESS -> {
+                response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+                reject(request, response, 409, "CONFLICT",
+                        "A request with this " + HEADER + " is still being processed");
+            }
+            case MISMATCH -> reject(request, response, 422, "UNPROCESSABLE_ENTITY",
+                    HEADER + " was already used for a different request");
+            case APPLIED -> reject(request, response, 409, "CONFLICT",
+                    "A request with this " + HEADER + " was already applied; its response was not recorded");
+            case STARTED -> execute(cachedRequest, response, filterChain, keyHash, decision.claim(), fingerprint);
+        }
+    }
+
+    private void execute(HttpServletRequest request,
+                         HttpServletResponse response,
+                         FilterChain filterChain,
+                         String keyHash,
+                         String claim,
+                         String fingerprint) throws ServletException, IOException {
+
+        ContentCachingResponseWrapper cachingResponse = new ContentCachingResponseWrapper(response);
+        store.enter(claim);
+        try {
+            filterChain.doFilter(request, cachingResponse);
+        } catch (ServletException | IOException | RuntimeException ex) {
+            if (!store.release(keyHash, claim)) {
+                store.complete(keyHash, claim, fingerprint, 500, null, null);
+            }
+            throw ex;
+        } finally {
+            store.exit();
+        }
+
+        // server errors are only retried when nothing was committed
+        int status = cachingResponse.getStatus();
+        if (status < 500 || !store.release(keyHash, claim)) {
+            store.complete(keyHash, claim, fingerprint, status, cachingResponse.getContentType(),
+                    cachingResponse.getContentAsByteArray());
+        }
+        cachingResponse.copyBodyToResponse();
+    }
+
+    private void replay(IdempotencyStore.Entry entry, HttpServletResponse response) throws IOException {
+        response.setStatus(entry.responseStatus());
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (entry.contentType() != null) {
+            response.setContentType(entry.contentType());
+        }
+        if (entry.body() != null) {
+            response.setContentLength(entry.body().length);
+            response.getOutputStream().write(entry.body());
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response,
+                        int status, String error, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                ApiError.of(status, error, message, request.getRequestURI()));
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private static String principal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? "anonymous" : authentication.getName();
+    }
+
+    // method, path, parameters (sorted) and body: a retry must be the very same request
+    static String fingerprint(HttpServletRequest request, byte[] body) {
+        StringBuilder text = new StringBuilder()
+                .append(request.getMethod()).append(' ')
+                .append(request.getRequestURI()).append('\n');
+
+        Map<String, String[]> parameters = new TreeMap<>(request.getParameterMap());
+        parameters.forEach((name, values) -> text.append(name).append('=')
+                .append(String.join(",", values)).append('\n'));
+
+        text.append(HexFormat.of().formatHex(digest(body)));
+        return sha256(text.toString());
+    }
+
+    static String sha256(String value) {
+        return HexFormat.of().formatHex(digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    /**
+     * The request with its body already read, so it can be fingerprinted and still reach the controller.
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.wldu.webservices.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+import org.wldu.webservices.transaction.TransactionHooks;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Idempotency keys and the responses they produced.
+ * The idempotency_keys table is the record shared by all instances; recent keys
+ * are mirrored in memory so a replay is answered without touching the database.
+ * A key first claims a row (IN_PROGRESS), then stores the response (COMPLETED);
+ * rows expire after the configured TTL. A claim whose request never finished
+ * (crashed instance) can be taken over once its lease has run out. The lease is
+ * short so a crash is recovered quickly; while the request runs, the instance
+ * holding the claim keeps renewing it. Each claim has its own token, and only
+ * the holder of that claim can complete or release the key.
+ * Every write transaction of the request marks its key APPLIED just before it
+ * commits, in that same transaction: an applied key is never released or taken
+ * over, so a crash or a server error after the commit can not let a retry run
+ * the request again.
+ */
+@Component
+public class IdempotencyStore implements TransactionExecutionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    static final String IN_PROGRESS = "IN_PROGRESS";
+    static final String APPLIED = "APPLIED";
+    static final String COMPLETED = "COMPLETED";
+
+    private static final String CLAIM_SQL = """
+            INSERT INTO idempotency_keys (key_hash, fingerprint, claim_token, status, locked_until, created_at, expires_at)
+            VALUES (?, ?, ?, 'IN_PROGRESS', ?, ?, ?)
+            ON CONFLICT (key_hash) DO NOTHING
+            """;
+
+    // an expired key, or a claim abandoned mid-request, may be claimed again
+    private static final String TAKE_OVER_SQL = """
+            UPDATE idempotency_keys
+            SET fingerprint = ?, claim_token = ?, status = 'IN_PROGRESS', locked_until = ?, created_at = ?, expires_at = ?,
+                response_status = NULL, response_content_type = NULL, response_body = NULL
+            WHERE key_hash = ?
+              AND (expires_at < ? OR (status = 'IN_PROGRESS' AND locked_until < ?))
+            """;
+
+    private static final String FIND_SQL = """
+            SELECT fingerprint, status, response_status, response_content_type, response_body, locked_until < ?
+            FROM idempotency_keys
+            WHERE key_hash = ? AND expires_at >= ?
+            """;
+
+    private static final String COMPLETE_SQL = """
+            UPDATE idempotency_keys
+            SET status = 'COMPLETED', response_status = ?, response_content_type = ?, response_body = ?
+            WHERE key_hash = ? AND status IN ('IN_PROGRESS', 'APPLIED') AND fingerprint = ? AND claim_token = ?
+            """;
+
+    private static final String MARK_APPLIED_SQL = """
+            UPDATE idempotency_keys
+            SET status = 'APPLIED'
+            WHERE claim_token = ? AND status IN ('IN_PROGRESS', 'APPLIED')
+            """;
+
+    private static final String RELEASE_SQL = """
+            DELETE FROM idempotency_keys
+            WHERE key_hash = ? AND status = 'IN_PROGRESS' AND claim_token = ?
+            """;
+
+    private static final String RENEW_SQL = """
+            UPDATE idempotency_keys
+            SET locked_until = ?
+            WHERE status IN ('IN_PROGRESS', 'APPLIED') AND claim_token = ANY (?)
+            """;
+
+    public enum Outcome {
+        STARTED,      // the caller owns the key and runs the request
+        REPLAY,       // a stored response exists
+        IN_PROGRESS,  // the first request with this key is still running
+        MISMATCH,     // the key was used for a different request
+        APPLIED       // the first request committed, then died before its response was stored
+    }
+
+    /**
+     * A key's state; response fields are set once it completed.
+     */
+    record Entry(String fingerprint, String status, int responseStatus, String contentType, byte[] body) {
+
+        static Entry inProgress(String fingerprint) {
+            return new Entry(fingerprint, IN_PROGRESS, 0, null, null);
+        }
+
+        boolean completed() {
+            return COMPLETED.equals(status);
+        }
+    }
+
+    // claim: set when the outcome is STARTED, and needed to complete or release the key
+    record Decision(Outcome outcome, Entry entry, String claim) {
+    }
+
+    private record Stored(Entry entry, boolean leaseExpired) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration ttl;
+    private final Duration lease;
+
+    // key hash -> state, for keys seen by this instance
+    private final Cache<String, Entry> entries;
+
+    // claim tokens of the requests this instance is running, renewed until they finish
+    private final Set<String> heldClaims = ConcurrentHashMap.newKeySet();
+
+    // claim of the idempotent request running on this thread
+    private final ThreadLocal<String> currentClaim = new ThreadLocal<>();
+
+    public IdempotencyStore(JdbcTemplate jdbcTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.idempotency.ttl-hours:24}") long ttlHours,
+                            @Value("${app.idempotency.lease-seconds:30}") long leaseSeconds,
+                            @Value("${app.idempotency.cache-size:10000}") long cacheSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "idempotency.keys");
+    }
+
+    /**
+     * Claims the key for this request, or says why the request must not run.
+     */
+    Decision begin(String keyHash, String fingerprint) {
+
+        Entry known = entries.getIfPresent(keyHash);
+        if (known != null && known.completed()) {
+            return decide(known, fingerprint);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp nowTs = Timestamp.valueOf(now);
+        Timestamp lockedUntil = Timestamp.valueOf(now.plus(lease));
+        Timestamp expiresAt = Timestamp.valueOf(now.plus(ttl));
+
+        String claim = UUID.randomUUID().toString();
+        heldClaims.add(claim);
+        if (jdbcTemplate.update(CLAIM_SQL, keyHash, fingerprint, claim, lockedUntil, nowTs, expiresAt) == 1
+                || jdbcTemplate.update(TAKE_OVER_SQL, fingerprint, claim, lockedUntil, nowTs, expiresAt,
+                keyHash, nowTs, nowTs) == 1) {
+            entries.put(keyHash, Entry.inProgress(fingerprint));
+            return new Decision(Outcome.STARTED, null, claim);
+        }
+        heldClaims.remove(claim);
+
+        List<Stored> stored = jdbcTemplate.query(FIND_SQL,
+                (rs, rowNum) -> new Stored(
+                        new Entry(
+                                rs.getString(1),
+                                rs.getString(2),
+                                rs.getInt(3),
+                                rs.getString(4),
+                                rs.getBytes(5)),
+                        rs.getBoolean(6)),
+                nowTs, keyHash, nowTs);
+
+        if (stored.isEmpty()) {
+            // expired and purged between the two statements: treat as still running, the client retries
+            return new Decision(Outcome.IN_PROGRESS, null, null);
+        }
+
+        Entry entry = stored.get(0).entry();
+        if (entry.completed()) {
+            entries.put(keyHash, entry);
+        }
+        if (APPLIED.equals(entry.status()) && stored.get(0).leaseExpired()
+                && entry.fingerprint().equals(fingerprint)) {
+            return new Decision(Outcome.APPLIED, entry, null);
+        }
+        return decide(entry, fingerprint);
+    }
+
+    void complete(String keyHash, String claim, String fingerprint, int status, String contentType, byte[] body) {
+        heldClaims.remove(claim);
+        if (jdbcTemplate.update(COMPLETE_SQL, status, contentType, body, keyHash, fingerprint, claim) == 1) {
+            entries.put(keyHash, new Entry(fingerprint, COMPLETED, status, contentType, body));
+        } else {
+            // the claim was taken over (lease not renewed in time); the new holder's result stands
+            log.warn("Idempotency claim lost before completion, response not stored");
+            entries.invalidate(keyHash);
+        }
+    }
+
+    /**
+     * Frees the key of a failed request so a retry runs it again. Returns false when
+     * the request had already committed (or lost its claim): the key stays taken.
+     */
+    boolean release(String keyHash, String claim) {
+        heldClaims.remove(claim);
+        int released = jdbcTemplate.update(RELEASE_SQL, keyHash, claim);
+        entries.invalidate(keyHash);
+        return released == 1;
+    }
+
+    /* =======================
+       REQUEST TRANSACTIONS
+       ======================= */
+
+    // binds the claim to the thread running the request, until exit()
+    void enter(String claim) {
+        currentClaim.set(claim);
+    }
+
+    void exit() {
+        currentClaim.remove();
+    }
+
+    @Override
+    public void afterBegin(TransactionExecution transaction, Throwable beginFailure) {
+        String claim = currentClaim.get();
+        if (claim == null || beginFailure != null
+                || !transaction.isNewTransaction() || transaction.isReadOnly()) {
+            return;
+        }
+        TransactionHooks.beforeCommit(() -> markApplied(claim));
+    }
+
+    // runs in the request's transaction, so the mark commits with its changes or not at all
+    private void markApplied(String claim) {
+        if (jdbcTemplate.update(MARK_APPLIED_SQL, claim) == 0) {
+            // taken over after the lease ran out: the retry runs the request, this one must not
+            throw new IllegalStateException("Idempotency claim lost, the request is rolled back");
+        }
+    }
+
+    // keeps the claims of requests still running from being taken over
+    @Scheduled(fixedDelayString = "${app.idempotency.renew-interval-ms:10000}")
+    public void renewLeases() {
+        if (heldClaims.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(RENEW_SQL, Timestamp.valueOf(LocalDateTime.now().plus(lease)),
+                (Object) heldClaims.toArray(String[]::new));
+    }
+
+    @Scheduled(cron = "${app.idempotency.purge-cron:0 15 * * * *}")
+    public void purgeExpired() {
+        int deleted = jdbcTemplate.update("DELETE FROM idempotency_keys WHERE expires_at < ?",
+                Timestamp.valueOf(LocalDateTime.now()));
+        if (deleted > 0) {
+            log.info("Purged {} expired idempotency keys", deleted);
+        }
+    }
+
+    private static Decision decide(Entry entry, String fingerprint) {
+        if (!entry.fingerprint().equals(fingerprint)) {
+            return new Decision(Outcome.MISMATCH, entry, null);
+        }
+        return new Decision(entry.completed() ? Outcome.REPLAY : Outcome.IN_PROGRESS, entry, null);
+    }
+}
@@ -0,0 +1,9 @@
+package org.wldu.webservices.pagination;
+
+import java.util.List;
+
+/**
+ * One page of a keyset (seek) listing. {@code nextCursor} is null on the last page.
+ */
+public record KeysetPage<T>(List<T> content, String nextCursor, boolean hasMore) {
+}
@@ -0,0 +1,178 @@
+package org.wldu.webservices.pagination;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.stereotype.Component;
+import org.wldu.webservices.exception.BadRequestException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Seek-method pagination: instead of OFFSET the next page starts after the
+ * (sortBy, id) of the previous page's last row, so every page costs the same
+ * index range scan no matter how deep the client has scrolled.
+ * Rows come back as the requested sparse fieldset, selected column by column.
+ */
+@Component
+public class KeysetPager {
+
+    // selected next to the fieldset when the client did not ask for the sort column
+    private static final String SORT_ALIAS = "_sort";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public KeysetPage<Map<String, Object>> fetch(
+            Class<?> entityType,
+            Set<String> sortableFields,
+            SparseFieldset fieldset,
+            String searchField,
+            String search,
+            String sortBy,
+            String sortDir,
+            String cursor,
+            int size
+    ) {
+
+        if (size <= 0) {
+            throw new BadRequestException("Size must be > 0");
+        }
+
+        if (!sortableFields.contains(sortBy)) {
+            throw new BadRequestException("Cannot sort by: " + sortBy);
+        }
+
+        boolean ascending = sortDir.equalsIgnoreCase("asc");
+
+        SeekCursor after = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            after = SeekCursor.decode(cursor);
+            if (!after.sortBy().equals(sortBy) || after.ascending() != ascending) {
+                throw new BadRequestException("Cursor does not match the requested sort");
+            }
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<?> root = query.from(entityType);
+
+        List<Predicate> where = new ArrayList<>();
+
+        if (search != null && !search.isEmpty()) {
+            where.add(cb.like(
+                    cb.lower(root.get(searchField)),
+                    "%" + search.toLowerCase() + "%"
+            ));
+        }
+
+        if (after != null) {
+            Class<?> sortType = root.get(sortBy).getJavaType();
+            where.add(seek(cb, root, sortBy, ascending, parse(after.lastValue(), sortType), after.lastId()));
+        }
+
+        Path<Object> sortPath = root.get(sortBy);
+        Path<Object> idPath = root.get("id");
+
+        String sortAlias = fieldset.contains(sortBy) ? sortBy : SORT_ALIAS;
+        List<Selection<?>> selections = fieldset.selections(root);
+        if (!fieldset.contains(sortBy)) {
+            selections.add(root.get(sortBy).alias(SORT_ALIAS));
+        }
+
+        query.multiselect(selections)
+                .where(where.toArray(Predicate[]::new))
+                .orderBy(
+                        ascending ? cb.asc(sortPath) : cb.desc(sortPath),
+                        ascending ? cb.asc(idPath) : cb.desc(idPath)
+                );
+
+        // one extra row tells us whether another page exists without counting
+        List<Tuple> rows = entityManager.createQuery(query)
+                .setMaxResults(size + 1)
+                .getResultList();
+
+        boolean hasMore = rows.size() > size;
+        List<Tuple> page = hasMore ? rows.subList(0, size) : rows;
+
+        List<Map<String, Object>> content = new ArrayList<>(page.size());
+        for (Tuple tuple : page) {
+            content.add(fieldset.toRow(tuple));
+        }
+
+        String nextCursor = null;
+        if (hasMore) {
+            Tuple last = page.get(page.size() - 1);
+            Object lastId = last.get("id");
+            Object sortValue = last.get(sortAlias);
+
+            nextCursor = new SeekCursor(
+                    sortBy,
+                    ascending,
+                    sortValue == null ? null : sortValue.toString(),
+                    (Long) lastId
+            ).encode();
+        }
+
+        return new KeysetPage<>(List.copyOf(content), nextCursor, hasMore);
+    }
+
+    /*
+     * Rows strictly after (value, lastId) in "ORDER BY sortBy, id".
+     * PostgreSQL sorts NULLs last ascending and first descending,
+     * so rows with a null sort value are handled as their own group.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate seek(CriteriaBuilder cb, Root<?> root, String sortBy,
+                           boolean ascending, Comparable value, Long lastId) {
+
+        Path<Long> id = root.get("id");
+        Predicate idAfter = ascending ? cb.greaterThan(id, lastId) : cb.lessThan(id, lastId);
+
+        if ("id".equals(sortBy)) {
+            return idAfter;
+        }
+
+        Path<Comparable> column = root.get(sortBy);
+
+        if (value == null) {
+            Predicate sameGroup = cb.and(cb.isNull(column), idAfter);
+            return ascending ? sameGroup : cb.or(sameGroup, cb.isNotNull(column));
+        }
+
+        Predicate beyond = ascending ? cb.greaterThan(column, value) : cb.lessThan(column, value);
+        Predicate tie = cb.and(cb.equal(column, value), idAfter);
+        Predicate next = cb.or(beyond, tie);
+
+        return ascending ? cb.or(next, cb.isNull(column)) : next;
+    }
+
+    private Comparable<?> parse(String value, Class<?> type) {
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            if (type == String.class) return value;
+            if (type == Long.class || type == long.class) return Long.valueOf(value);
+            if (type == Integer.class || type == int.class) return Integer.valueOf(value);
+            if (type == BigDecimal.class) return new BigDecimal(value);
+            if (type == LocalDateTime.class) return LocalDateTime.parse(value);
+        } catch (RuntimeException ex) {
+            throw new BadRequestException("Invalid cursor");
+        }
+
+        throw new BadRequestException("Cannot page by: " + type.getSimpleName());
+    }
+}
@@ -0,0 +1,103 @@
+package org.wldu.webservices.pagination;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Offset and by-id listings that select only the columns of a sparse fieldset.
+ * No entities are loaded, so lazy associations and large TEXT columns the
+ * client did not ask for are never touched.
+ */
+@Component
+public class ProjectionQuery {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public List<Map<String, Object>> page(
+            Class<?> entityType,
+            SparseFieldset fieldset,
+            String searchField,
+            String search,
+            Pageable pageable
+    ) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<?> root = query.from(entityType);
+
+        query.multiselect(fieldset.selections(root));
+
+        if (search != null && !search.isEmpty()) {
+            query.where(cb.like(
+                    cb.lower(root.get(searchField)),
+                    "%" + search.toLowerCase() + "%"
+            ));
+        }
+
+        // id as tie-breaker keeps offset pages stable when sort values repeat
+        List<Order> orders = new ArrayList<>();
+        for (Sort.Order order : pageable.getSort()) {
+            orders.add(order.isAscending()
+                    ? cb.asc(root.get(order.getProperty()))
+                    : cb.desc(root.get(order.getProperty())));
+        }
+        orders.add(cb.asc(root.get("id")));
+        query.orderBy(orders);
+
+        return toRows(fieldset, entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList());
+    }
+
+    /**
+     * Rows for the given ids in the order of {@code ids}; ids that no longer exist are skipped.
+     */
+    public List<Map<String, Object>> byIds(Class<?> entityType, SparseFieldset fieldset, Collection<Long> ids) {
+
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<?> root = query.from(entityType);
+
+        query.multiselect(fieldset.selections(root))
+                .where(root.get("id").in(ids));
+
+        Map<Object, Map<String, Object>> byId = new HashMap<>();
+        for (Map<String, Object> row : toRows(fieldset, entityManager.createQuery(query).getResultList())) {
+            byId.put(row.get("id"), row);
+        }
+
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private List<Map<String, Object>> toRows(SparseFieldset fieldset, List<Tuple> tuples) {
+        List<Map<String, Object>> rows = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            rows.add(fieldset.toRow(tuple));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,52 @@
+package org.wldu.webservices.pagination;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Short-lived cache for list totals ("recordsTotal") so paging through a table
+ * does not run a full count(*) on every request. Entries expire after a TTL and
+ * are dropped early when the owning service writes to the table.
+ */
+@Component
+public class RecordCountCache {
+
+    // guards against unbounded growth from arbitrary search strings
+    private static final int MAX_ENTRIES = 1000;
+
+    private final long ttlMillis;
+    private final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
+
+    public RecordCountCache(@Value("${app.pagination.count-ttl-seconds:30}") long ttlSeconds) {
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    public long count(String table, String filter, LongSupplier counter) {
+        String key = table + ":" + (filter == null ? "" : filter.toLowerCase());
+        long now = System.currentTimeMillis();
+
+        CachedCount cached = counts.get(key);
+        if (cached != null && cached.expiresAt() > now) {
+            return cached.value();
+        }
+
+        if (counts.size() >= MAX_ENTRIES) {
+            counts.clear();
+        }
+
+        long value = counter.getAsLong();
+        counts.put(key, new CachedCount(value, now + ttlMillis));
+        return value;
+    }
+
+    public void invalidate(String table) {
+        counts.keySet().removeIf(key -> key.startsWith(table + ":"));
+    }
+
+    private record CachedCount(long value, long expiresAt) {
+    }
+}
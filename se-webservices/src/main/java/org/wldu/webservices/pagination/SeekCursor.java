@@ -0,0 +1,50 @@
+package org.wldu.webservices.pagination;
+
+import org.wldu.webservices.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last row of a keyset page: the value of the sort column and
+ * the id used as tie-breaker. Sent to clients as an opaque base64url token.
+ */
+public record SeekCursor(String sortBy, boolean ascending, String lastValue, Long lastId) {
+
+    private static final String VERSION = "v1";
+
+    public String encode() {
+        String raw = String.join("|",
+                VERSION,
+                sortBy,
+                ascending ? "asc" : "desc",
+                String.valueOf(lastId),
+                lastValue == null ? "0" : "1",
+                lastValue == null ? "" : lastValue);
+
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SeekCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            // the value goes last so it may itself contain the separator
+            String[] parts = raw.split("\\|", 6);
+
+            if (parts.length != 6 || !VERSION.equals(parts[0])) {
+                throw new BadRequestException("Invalid cursor");
+            }
+
+            return new SeekCursor(
+                    parts[1],
+                    "asc".equals(parts[2]),
+                    "1".equals(parts[4]) ? parts[5] : null,
+                    Long.valueOf(parts[3])
+            );
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.wldu.webservices.pagination;
+
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.wldu.webservices.exception.BadRequestException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Columns a list client asked for with {@code fields=title,author,...}.
+ * Only whitelisted attributes are accepted and {@code id} is always included,
+ * so the list is safe to turn straight into the SELECT clause.
+ */
+public record SparseFieldset(List<String> fields) {
+
+    public static SparseFieldset parse(String requested, Set<String> selectable, List<String> defaults) {
+
+        Set<String> fields = new LinkedHashSet<>();
+        fields.add("id");
+
+        if (requested == null || requested.isBlank()) {
+            fields.addAll(defaults);
+            return new SparseFieldset(List.copyOf(fields));
+        }
+
+        for (String field : requested.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!selectable.contains(name)) {
+                throw new BadRequestException("Unknown field: " + name);
+            }
+            fields.add(name);
+        }
+
+        return new SparseFieldset(List.copyOf(fields));
+    }
+
+    public boolean contains(String field) {
+        return fields.contains(field);
+    }
+
+    List<Selection<?>> selections(Root<?> root) {
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            selections.add(root.get(field).alias(field));
+        }
+        return selections;
+    }
+
+    Map<String, Object> toRow(Tuple tuple) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (String field : fields) {
+            row.put(field, tuple.get(field));
+        }
+        return row;
+    }
+}
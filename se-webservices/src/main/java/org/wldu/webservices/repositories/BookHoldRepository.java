@@ -0,0 +1,56 @@
+package org.wldu.webservices.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.wldu.webservices.entities.BookHold;
+import org.wldu.webservices.entities.HoldStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface BookHoldRepository extends JpaRepository<BookHold, Long> {
+
+    List<BookHold> findByStatusInOrderByIdAsc(Collection<HoldStatus> statuses);
+
+    List<BookHold> findByBookIdAndStatusInOrderByIdAsc(Long bookId, Collection<HoldStatus> statuses);
+
+    List<BookHold> findByCustomerIdOrderByIdDesc(Long customerId);
+
+    boolean existsByBookIdAndCustomerIdAndStatusIn(Long bookId, Long customerId, Collection<HoldStatus> statuses);
+
+    // queue of a book straight from the table (partial index ix_book_holds_queue)
+    boolean existsByBookIdAndStatus(Long bookId, HoldStatus status);
+
+    BookHold findFirstByBookIdAndStatusOrderByIdAsc(Long bookId, HoldStatus status);
+
+    @Query("select distinct h.bookId from BookHold h, Book b " +
+            "where b.id = h.bookId and h.status = :waiting and b.copiesAvailable > 0")
+    List<Long> findWaitingBooksWithShelvedCopies(@Param("waiting") HoldStatus waiting);
+
+    List<BookHold> findByStatusAndExpiresAtBefore(HoldStatus status, LocalDateTime now);
+
+    // state changes are conditional so two desks (or the expiry job) can never move the same hold twice
+    @Modifying(flushAutomatically = true)
+    @Query("update BookHold h set h.status = :to where h.id = :id and h.status = :from")
+    int transition(@Param("id") Long id, @Param("from") HoldStatus from, @Param("to") HoldStatus to);
+
+    @Modifying(flushAutomatically = true)
+    @Query("update BookHold h set h.status = :ready, h.readyAt = :now, h.expiresAt = :expiresAt " +
+            "where h.id = :id and h.status = :waiting")
+    int markReady(@Param("id") Long id,
+                  @Param("now") LocalDateTime now,
+                  @Param("expiresAt") LocalDateTime expiresAt,
+                  @Param("waiting") HoldStatus waiting,
+                  @Param("ready") HoldStatus ready);
+
+    @Modifying(flushAutomatically = true)
+    @Query("update BookHold h set h.status = :fulfilled " +
+            "where h.bookId = :bookId and h.customerId = :customerId and h.status = :ready")
+    int fulfill(@Param("bookId") Long bookId,
+                @Param("customerId") Long customerId,
+                @Param("ready") HoldStatus ready,
+                @Param("fulfilled") HoldStatus fulfilled);
+}
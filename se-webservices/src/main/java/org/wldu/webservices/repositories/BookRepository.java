@@ -1,11 +1,41 @@
 package org.wldu.webservices.repositories;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.wldu.webservices.entities.Book;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface BookRepository extends JpaRepository<Book,Long> {
+
+public interface BookRepository extends JpaRepository<Book,Long>, BookRepositoryCustom {
     Page<Book> findByTitleContainingIgnoreCase(String name, Pageable pageable);
 
+    // list totals come from RecordCountCache
+    long countByTitleContainingIgnoreCase(String name);
+
+    List<Book> findByIsbnIn(Collection<String> isbns);
+
+    // read from the table, never the cache; the share lock makes a concurrent return wait
+    @Query(value = "SELECT COALESCE(copies_available, 0) FROM books WHERE id = :id FOR SHARE", nativeQuery = true)
+    Optional<Integer> lockCopiesAvailable(@Param("id") Long id);
+
+    // keyset batches for the search index rebuild
+    List<Book> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // server-side cursor for the catalog export; must be consumed inside a transaction
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select b from Book b order by b.id")
+    Stream<Book> streamAllByOrderByIdAsc();
 }
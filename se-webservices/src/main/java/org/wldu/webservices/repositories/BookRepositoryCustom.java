@@ -0,0 +1,22 @@
+package org.wldu.webservices.repositories;
+
+import java.util.Collection;
+
+public interface BookRepositoryCustom {
+
+    /*
+     * Conditional availability updates: the check and the change happen in one
+     * UPDATE, so concurrent checkouts can never take more copies than exist.
+     * The version is bumped so stale entity saves still fail their optimistic check.
+     */
+    int takeCopy(Long id);
+
+    int returnCopy(Long id);
+
+    /*
+     * For SQL that changes books behind Hibernate's back (the batch circulation
+     * statements): flushes, keeps the cached books from being read or re-cached
+     * until the transaction ends, and detaches managed copies.
+     */
+    void beforeBulkUpdate(Collection<Long> ids);
+}
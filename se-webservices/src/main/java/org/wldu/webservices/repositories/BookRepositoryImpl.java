@@ -0,0 +1,95 @@
+package org.wldu.webservices.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.NativeQuery;
+import org.springframework.transaction.annotation.Transactional;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.transaction.TransactionHooks;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A JPQL bulk update on books empties the whole "books" cache region, so every
+ * checkout made all cached books miss. These run as native statements whose
+ * query space no entity maps to, which leaves the region alone; only the entry
+ * of the touched book is locked for the rest of the transaction.
+ */
+@Transactional
+class BookRepositoryImpl implements BookRepositoryCustom {
+
+    private static final String AVAILABILITY_SPACE = "book_availability";
+
+    private static final String TAKE_COPY_SQL = """
+            UPDATE books
+            SET copies_available = copies_available - 1, version = coalesce(version, 0) + 1
+            WHERE id = ? AND copies_available > 0
+            """;
+
+    private static final String RETURN_COPY_SQL = """
+            UPDATE books
+            SET copies_available = copies_available + 1, version = coalesce(version, 0) + 1
+            WHERE id = ?
+            """;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int takeCopy(Long id) {
+        return updateAvailability(TAKE_COPY_SQL, id);
+    }
+
+    @Override
+    public int returnCopy(Long id) {
+        return updateAvailability(RETURN_COPY_SQL, id);
+    }
+
+    @Override
+    public void beforeBulkUpdate(Collection<Long> ids) {
+        // the statements are not synchronized with books, so pending changes are flushed by hand
+        entityManager.flush();
+
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        EntityPersister persister = session.getFactory().getMappingMetamodel().getEntityDescriptor(Book.class);
+        for (Long id : ids) {
+            lockCachedBook(session, persister, id);
+
+            // a managed copy would keep its old availability and version
+            Object managed = session.getPersistenceContextInternal().getEntity(session.generateEntityKey(id, persister));
+            if (managed != null) {
+                entityManager.detach(managed);
+            }
+        }
+    }
+
+    private int updateAvailability(String sql, Long id) {
+        beforeBulkUpdate(List.of(id));
+
+        return entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(AVAILABILITY_SPACE)
+                .setParameter(1, id)
+                .executeUpdate();
+    }
+    /*
+     * Soft-locks the cached book until the transaction ends, the way Hibernate does for
+     * its own entity updates: while locked, reads miss and loads cannot put the old row
+     * back; after unlocking, only loads that started later may cache it again.
+     */
+    private void lockCachedBook(SharedSessionContractImplementor session, EntityPersister persister, Long id) {
+        if (!persister.canWriteToCache()) {
+            return;
+        }
+        EntityDataAccess cache = persister.getCacheAccessStrategy();
+        Object key = cache.generateCacheKey(id, persister, session.getFactory(), session.getTenantIdentifier());
+        SoftLock lock = cache.lockItem(session, key, null);
+
+        TransactionHooks.afterCompletion(() -> cache.unlockItem(session, key, lock));
+    }
+}
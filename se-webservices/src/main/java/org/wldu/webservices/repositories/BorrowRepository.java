@@ -1,14 +1,39 @@
 package org.wldu.webservices.repositories;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.wldu.webservices.entities.BorrowBook;
 
 import java.util.List;
 
 public interface BorrowRepository extends JpaRepository<BorrowBook,Long> {
+    // customer and book are lazy; these listings join them in the same SELECT
+    @Override
+    @EntityGraph(attributePaths = {"customer", "book"})
+    List<BorrowBook> findAll();
+
+    @EntityGraph(attributePaths = {"customer", "book"})
     List<BorrowBook> findByCustomerId(Long customerId);
 
+    @EntityGraph(attributePaths = {"customer", "book"})
     List<BorrowBook> findByBookId(Long bookId);
     long countByReturnedFalse();
     long countByReturnedTrue();
+
+    // flips the returned flag only if it is not already in the requested state
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update BorrowBook b set b.returned = :returned, " +
+            "b.version = coalesce(b.version, 0) + 1 " +
+            "where b.id = :id and b.returned <> :returned")
+    int updateReturned(@Param("id") Long id, @Param("returned") boolean returned);
+
+    // late fee fixed at return time
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update BorrowBook b set b.latePenalty = :fee, " +
+            "b.version = coalesce(b.version, 0) + 1 " +
+            "where b.id = :id")
+    int updateLatePenalty(@Param("id") Long id, @Param("fee") Double fee);
 }
@@ -19,4 +19,7 @@ public interface CustomerRepository extends JpaRepository<Customer, Long> {
     List<Customer> findByEmailContainingIgnoreCase(String email);
 
     Page<Customer> findByNameContainingIgnoreCase(String name, Pageable pageable);
+
+    // list totals come from RecordCountCache
+    long countByNameContainingIgnoreCase(String name);
 }
@@ -0,0 +1,7 @@
+package org.wldu.webservices.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.wldu.webservices.entities.JobCheckpoint;
+
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {
+}
@@ -9,4 +9,7 @@ import java.util.List;
 public interface NotificationRepository extends JpaRepository<Notification, Long> {
     List<Notification> findByReceiverCustomerId(Long customerId);
     List<Notification> findByReceiverRole(NotificationRole role);
+
+    // role broadcasts, newest first
+    List<Notification> findByReceiverRoleAndReceiverCustomerIdIsNullOrderByIdDesc(NotificationRole role);
 }
@@ -0,0 +1,112 @@
+package org.wldu.webservices.services.contracts;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.wldu.webservices.dto.BookExportRow;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.repositories.BookRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams the whole catalog straight from a database cursor to the response.
+ * Rows are read with a JDBC fetch size and the persistence context is cleared
+ * periodically, so memory stays flat regardless of catalog size.
+ */
+@Service
+public class BookExportService {
+
+    // matches the fetch size hint on BookRepository.streamAllByOrderByIdAsc
+    private static final int FLUSH_EVERY = 500;
+
+    private final BookRepository bookRepository;
+    private final ObjectWriter rowWriter;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public BookExportService(BookRepository bookRepository, ObjectMapper objectMapper) {
+        this.bookRepository = bookRepository;
+        this.rowWriter = objectMapper.writerFor(BookExportRow.class);
+    }
+
+    /* =======================
+       NDJSON (one book per line)
+       ======================= */
+    @Transactional(readOnly = true)
+    public void writeNdjson(OutputStream out) throws IOException {
+        try (Stream<Book> books = bookRepository.streamAllByOrderByIdAsc()) {
+            Iterator<Book> it = books.iterator();
+            int count = 0;
+
+            while (it.hasNext()) {
+                out.write(rowWriter.writeValueAsBytes(BookExportRow.from(it.next())));
+                out.write('\n');
+
+                if (++count % FLUSH_EVERY == 0) {
+                    out.flush();
+                    entityManager.clear();
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /* =======================
+       CSV
+       ======================= */
+    @Transactional(readOnly = true)
+    public void writeCsv(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeCsvLine(writer, BookExportRow.CSV_HEADER);
+
+        try (Stream<Book> books = bookRepository.streamAllByOrderByIdAsc()) {
+            Iterator<Book> it = books.iterator();
+            int count = 0;
+
+            while (it.hasNext()) {
+                writeCsvLine(writer, BookExportRow.from(it.next()).csvValues());
+
+                if (++count % FLUSH_EVERY == 0) {
+                    writer.flush();
+                    entityManager.clear();
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private static void writeCsvLine(Writer writer, Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(csvEscape(values[i]));
+        }
+        writer.write("\r\n");
+    }
+
+    private static String csvEscape(Object value) {
+        if (value == null) {
+            return "";
+        }
+
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0
+                && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,513 @@
+package org.wldu.webservices.services.contracts;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.wldu.webservices.dto.BookImportReport;
+import org.wldu.webservices.dto.BookImportRow;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.exception.BadRequestException;
+import org.wldu.webservices.pagination.RecordCountCache;
+import org.wldu.webservices.repositories.BookRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk book ingest. Rows are streamed from the request body, validated, and
+ * upserted on isbn with batched multi-row INSERT ... ON CONFLICT statements
+ * (the datasource rewrites JDBC batches into multi-row inserts). Book ids stay
+ * IDENTITY-generated by the database, so no generator change is needed.
+ */
+@Service
+public class BookImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(BookImportService.class);
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    // entity defaults (published year, copies, price) for columns left empty
+    private static final Book DEFAULTS = new Book();
+
+    /*
+     * On conflict the copies already out on loan are preserved:
+     * copies_available moves by the change in total_copies.
+     */
+    private static final String UPSERT_SQL = """
+            INSERT INTO books (version, title, author, isbn, category, published_year, description,
+                               price, cover_image_url, total_copies, copies_available, created_at, updated_at)
+            VALUES (0, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (isbn) DO UPDATE SET
+                version          = COALESCE(books.version, 0) + 1,
+                title            = EXCLUDED.title,
+                author           = EXCLUDED.author,
+                category         = EXCLUDED.category,
+                published_year   = EXCLUDED.published_year,
+                description      = EXCLUDED.description,
+                price            = EXCLUDED.price,
+                cover_image_url  = EXCLUDED.cover_image_url,
+                total_copies     = EXCLUDED.total_copies,
+                copies_available = GREATEST(COALESCE(books.copies_available, 0)
+                                            + EXCLUDED.total_copies - COALESCE(books.total_copies, 0), 0),
+                updated_at       = EXCLUDED.updated_at
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BookRepository bookRepository;
+    private final BookSearchIndex bookSearchIndex;
+    private final RecordCountCache recordCountCache;
+    private final DashboardStatsService dashboardStatsService;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    public BookImportService(JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             BookRepository bookRepository,
+                             BookSearchIndex bookSearchIndex,
+                             RecordCountCache recordCountCache,
+                             DashboardStatsService dashboardStatsService,
+                             EntityManagerFactory entityManagerFactory,
+                             ObjectMapper objectMapper,
+                             @Value("${app.import.batch-size:1000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.bookRepository = bookRepository;
+        this.bookSearchIndex = bookSearchIndex;
+        this.recordCountCache = recordCountCache;
+        this.dashboardStatsService = dashboardStatsService;
+        this.entityManagerFactory = entityManagerFactory;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    /* =======================
+       CSV (header row required)
+       ======================= */
+    public BookImportReport importCsv(InputStream in) throws IOException {
+        ImportRun run = new ImportRun();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        CsvRecordReader csv = new CsvRecordReader(reader);
+
+        List<String> header;
+        try {
+            header = csv.next();
+        } catch (MalformedCsvException ex) {
+            throw new BadRequestException(ex.getMessage());
+        }
+        if (header == null) {
+            throw new BadRequestException("CSV input is empty");
+        }
+        Map<String, Integer> columns = indexHeader(header);
+
+        long rowNumber = 0;
+        while (true) {
+            List<String> record;
+            try {
+                record = csv.next();
+            } catch (MalformedCsvException ex) {
+                // the open quote swallowed the rest of the file; keep what was imported so far
+                run.fail(rowNumber + 1, null, ex.getMessage());
+                break;
+            }
+            if (record == null) {
+                break;
+            }
+            if (record.size() == 1 && record.get(0).isBlank()) {
+                continue;
+            }
+            rowNumber++;
+            run.received++;
+
+            try {
+                run.add(rowNumber, fromCsv(record, columns));
+            } catch (IllegalArgumentException ex) {
+                run.fail(rowNumber, column(record, columns, "isbn"), ex.getMessage());
+            }
+        }
+
+        return run.finish();
+    }
+
+    /* =======================
+       JSON (array of book objects)
+       ======================= */
+    public BookImportReport importJson(InputStream in) throws IOException {
+        ImportRun run = new ImportRun();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new BadRequestException("Expected a JSON array of books");
+            }
+
+            long rowNumber = 0;
+            while (true) {
+                JsonNode node;
+                try {
+                    JsonToken token = parser.nextToken();
+                    if (token == JsonToken.END_ARRAY) {
+                        break;
+                    }
+                    if (token == null) {
+                        run.fail(rowNumber + 1, null, "Unexpected end of JSON input");
+                        break;
+                    }
+                    node = objectMapper.readTree(parser);
+                } catch (JsonProcessingException ex) {
+                    // the stream cannot be resynchronised; keep what was imported so far
+                    run.fail(rowNumber + 1, null, "Malformed JSON: " + ex.getOriginalMessage());
+                    break;
+                }
+                rowNumber++;
+                run.received++;
+
+                try {
+                    run.add(rowNumber, objectMapper.treeToValue(node, BookImportRow.class));
+                } catch (JsonProcessingException ex) {
+                    run.fail(rowNumber, node.path("isbn").asText(null), ex.getOriginalMessage());
+                } catch (IllegalArgumentException ex) {
+                    run.fail(rowNumber, node.path("isbn").asText(null), ex.getMessage());
+                }
+            }
+        }
+
+        return run.finish();
+    }
+
+    /* =======================
+       VALIDATION
+       ======================= */
+    private static PendingRow validate(long rowNumber, BookImportRow row) {
+        if (row == null) {
+            throw new IllegalArgumentException("Row is empty");
+        }
+
+        String title = trimToNull(row.title());
+        String isbn = trimToNull(row.isbn());
+
+        if (title == null) {
+            throw new IllegalArgumentException("Title is required");
+        }
+        if (isbn == null) {
+            throw new IllegalArgumentException("ISBN is required");
+        }
+
+        int totalCopies = row.totalCopies() != null ? row.totalCopies() : DEFAULTS.getTotalCopies();
+        int copiesAvailable = row.copiesAvailable() != null ? row.copiesAvailable() : totalCopies;
+        BigDecimal price = row.price() != null ? row.price() : DEFAULTS.getPrice();
+        int publishedYear = row.publishedYear() != null ? row.publishedYear() : DEFAULTS.getPublishedYear();
+
+        if (totalCopies < 0) {
+            throw new IllegalArgumentException("totalCopies must be >= 0");
+        }
+        if (copiesAvailable < 0 || copiesAvailable > totalCopies) {
+            throw new IllegalArgumentException("copiesAvailable must be between 0 and totalCopies");
+        }
+        if (price.signum() < 0) {
+            throw new IllegalArgumentException("price must be >= 0");
+        }
+
+        return new PendingRow(
+                rowNumber,
+                new BookImportRow(
+                        title,
+                        trimToNull(row.author()),
+                        isbn,
+                        trimToNull(row.category()),
+                        publishedYear,
+                        row.description(),
+                        price,
+                        trimToNull(row.coverImageUrl()),
+                        totalCopies,
+                        copiesAvailable
+                )
+        );
+    }
+
+    private static void bind(PreparedStatement ps, PendingRow pending) throws SQLException {
+        BookImportRow row = pending.data();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        ps.setString(1, row.title());
+        ps.setString(2, row.author());
+        ps.setString(3, row.isbn());
+        ps.setString(4, row.category());
+        ps.setInt(5, row.publishedYear());
+        ps.setString(6, row.description());
+        ps.setBigDecimal(7, row.price());
+        ps.setString(8, row.coverImageUrl());
+        ps.setInt(9, row.totalCopies());
+        ps.setInt(10, row.copiesAvailable());
+        ps.setTimestamp(11, now);
+        ps.setTimestamp(12, now);
+    }
+
+    /* =======================
+       CSV HELPERS
+       ======================= */
+    private static final List<String> CSV_COLUMNS = List.of(
+            "title", "author", "isbn", "category", "publishedyear", "description",
+            "price", "coverimageurl", "totalcopies", "copiesavailable"
+    );
+
+    private static Map<String, Integer> indexHeader(List<String> header) {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            // accepts publishedYear, published_year, "Published Year", ...
+            String name = header.get(i).trim().toLowerCase(Locale.ROOT).replaceAll("[_\\s]", "");
+            if (CSV_COLUMNS.contains(name)) {
+                columns.put(name, i);
+            }
+        }
+
+        if (!columns.containsKey("title") || !columns.containsKey("isbn")) {
+            throw new BadRequestException("CSV header must contain at least title and isbn columns");
+        }
+        return columns;
+    }
+
+    private static BookImportRow fromCsv(List<String> record, Map<String, Integer> columns) {
+        return new BookImportRow(
+                column(record, columns, "title"),
+                column(record, columns, "author"),
+                column(record, columns, "isbn"),
+                column(record, columns, "category"),
+                parseInteger(column(record, columns, "publishedyear"), "publishedYear"),
+                column(record, columns, "description"),
+                parseDecimal(column(record, columns, "price")),
+                column(record, columns, "coverimageurl"),
+                parseInteger(column(record, columns, "totalcopies"), "totalCopies"),
+                parseInteger(column(record, columns, "copiesavailable"), "copiesAvailable")
+        );
+    }
+
+    private static String column(List<String> record, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= record.size()) {
+            return null;
+        }
+        String value = record.get(index);
+        return value.isEmpty() ? null : value;
+    }
+
+    private static Integer parseInteger(String value, String column) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid number for " + column + ": " + value);
+        }
+    }
+
+    private static BigDecimal parseDecimal(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid price: " + value);
+        }
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private record PendingRow(long row, BookImportRow data) {
+    }
+
+    /**
+     * State of one import request: the pending batch, counters and reported errors.
+     */
+    private final class ImportRun {
+
+        private final long started = System.currentTimeMillis();
+        private final List<PendingRow> pending = new ArrayList<>();
+        private final Set<String> pendingIsbns = new HashSet<>();
+        private final List<BookImportReport.RowError> errors = new ArrayList<>();
+
+        private long received;
+        private long upserted;
+        private long failed;
+
+        void add(long rowNumber, BookImportRow row) {
+            PendingRow validated = validate(rowNumber, row);
+
+            // one multi-row upsert cannot touch the same isbn twice
+            if (pendingIsbns.contains(validated.data().isbn())) {
+                flush();
+            }
+
+            pending.add(validated);
+            pendingIsbns.add(validated.data().isbn());
+
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void fail(long rowNumber, String isbn, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new BookImportReport.RowError(rowNumber, isbn, message));
+            }
+        }
+
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            List<PendingRow> batch = List.copyOf(pending);
+            pending.clear();
+            pendingIsbns.clear();
+
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        jdbcTemplate.batchUpdate(UPSERT_SQL, batch, batch.size(), BookImportService::bind));
+                upserted += batch.size();
+            } catch (DataAccessException ex) {
+                // replay the batch row by row to pin the failure on the offending rows
+                for (PendingRow row : batch) {
+                    try {
+                        transactionTemplate.executeWithoutResult(status ->
+                                jdbcTemplate.update(UPSERT_SQL, ps -> bind(ps, row)));
+                        upserted++;
+                    } catch (DataAccessException rowEx) {
+                        fail(row.row(), row.data().isbn(),
+                                NestedExceptionUtils.getMostSpecificCause(rowEx).getMessage());
+                    }
+                }
+            }
+
+            afterWrite(batch);
+        }
+
+        BookImportReport finish() {
+            flush();
+            recordCountCache.invalidate(BookService.TABLE);
+            // the upsert does not tell inserts from updates; one recount per import is cheap
+            dashboardStatsService.reconcile();
+
+            long elapsed = Math.max(System.currentTimeMillis() - started, 1);
+            double rowsPerSecond = received * 1000.0 / elapsed;
+
+            log.info("Book import finished: {} rows, {} upserted, {} failed in {} ms ({} rows/s)",
+                    received, upserted, failed, elapsed, Math.round(rowsPerSecond));
+
+            return new BookImportReport(
+                    received,
+                    upserted,
+                    failed,
+                    List.copyOf(errors),
+                    failed > errors.size(),
+                    elapsed,
+                    rowsPerSecond
+            );
+        }
+
+        private void afterWrite(List<PendingRow> batch) {
+            // the upsert bypassed Hibernate, so drop cached Book rows and refresh the search index
+            entityManagerFactory.getCache().evict(Book.class);
+
+            List<String> isbns = batch.stream().map(row -> row.data().isbn()).toList();
+            bookRepository.findByIsbnIn(isbns).forEach(bookSearchIndex::index);
+        }
+    }
+
+    /**
+     * Minimal RFC 4180 reader: quoted fields may contain commas, doubled quotes and line breaks.
+     */
+    private static final class CsvRecordReader {
+
+        private final BufferedReader reader;
+
+        CsvRecordReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        List<String> next() throws IOException {
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new MalformedCsvException("Unterminated quoted field in CSV input");
+                    }
+                    if (c == '"') {
+                        reader.mark(1);
+                        if (reader.read() == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            reader.reset();
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == -1 || c == '\n') {
+                    fields.add(field.toString());
+                    return fields;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+
+                c = reader.read();
+            }
+        }
+    }
+
+    private static final class MalformedCsvException extends IOException {
+
+        MalformedCsvException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package org.wldu.webservices.services.contracts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.repositories.BookRepository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory inverted index over the book catalog.
+ * Every term points at the books containing it together with a field weight,
+ * so a search only touches the postings of the query terms instead of scanning
+ * the whole books table. The last query term is matched as a prefix to support
+ * search-as-you-type from the catalog page.
+ * A rebuild fills a new index next to the live one and swaps it in when done;
+ * changes made meanwhile go to both, so searches never see a half-built index.
+ */
+@Service
+public class BookSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(BookSearchIndex.class);
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private static final float ISBN_WEIGHT = 5.0f;
+    private static final float TITLE_WEIGHT = 3.0f;
+    private static final float AUTHOR_WEIGHT = 2.0f;
+    private static final float CATEGORY_WEIGHT = 1.5f;
+    private static final float DESCRIPTION_WEIGHT = 0.5f;
+
+    private final BookRepository bookRepository;
+
+    // the index searches read; replaced as a whole by a rebuild
+    private volatile Segment segment = new Segment();
+
+    // changes made while a rebuild runs, replayed onto the new segment before the swap;
+    // null when no rebuild is running. Updates hold the read lock, the swap the write lock.
+    private Queue<Consumer<Segment>> changesDuringRebuild;
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    private volatile boolean ready = false;
+
+    public BookSearchIndex(BookRepository bookRepository) {
+        this.bookRepository = bookRepository;
+    }
+
+    /* =======================
+       REBUILD
+       ======================= */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        long started = System.currentTimeMillis();
+
+        Queue<Consumer<Segment>> changes = new ConcurrentLinkedQueue<>();
+        swapLock.writeLock().lock();
+        try {
+            changesDuringRebuild = changes;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        Segment next = new Segment();
+        try {
+            // keyset walk by id: no offset scans and no count query per batch
+            long lastId = 0;
+            List<Book> batch;
+            do {
+                batch = bookRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(REBUILD_BATCH_SIZE));
+                batch.parallelStream().forEach(book -> next.index(book.getId(), weights(book)));
+                if (!batch.isEmpty()) {
+                    lastId = batch.get(batch.size() - 1).getId();
+                }
+            } while (batch.size() == REBUILD_BATCH_SIZE);
+
+            // most changes are replayed without blocking updates, the rest under the lock
+            replay(changes, next);
+            swapLock.writeLock().lock();
+            try {
+                replay(changes, next);
+                segment = next;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        } finally {
+            swapLock.writeLock().lock();
+            try {
+                changesDuringRebuild = null;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        }
+
+        ready = true;
+        log.info("Book search index built: {} books, {} terms in {} ms",
+                next.documentTerms.size(), next.postings.size(), System.currentTimeMillis() - started);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /* =======================
+       INCREMENTAL UPDATES
+       ======================= */
+    public void index(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+
+        Long id = book.getId();
+        Map<String, Float> weights = weights(book);
+        apply(target -> target.index(id, weights));
+    }
+
+    public void remove(Long id) {
+        apply(target -> target.remove(id));
+    }
+
+    /* =======================
+       SEARCH
+       ======================= */
+
+    /**
+     * Ranked search. Every query term has to match (AND), scores are the sum of
+     * the field weights of the matched terms; ties are broken by id.
+     */
+    public Page<Long> search(String query, Pageable pageable) {
+        List<String> queryTerms = tokenize(query);
+        if (queryTerms.isEmpty()) {
+            return Page.empty(pageable);
+        }
+
+        Segment current = segment;
+        Map<Long, Float> scores = null;
+        for (int i = 0; i < queryTerms.size(); i++) {
+            boolean prefix = i == queryTerms.size() - 1;
+            Map<Long, Float> matches = current.lookup(queryTerms.get(i), prefix);
+
+            if (scores == null) {
+                scores = matches;
+            } else {
+                Map<Long, Float> intersection = new HashMap<>();
+                for (Map.Entry<Long, Float> e : scores.entrySet()) {
+                    Float weight = matches.get(e.getKey());
+                    if (weight != null) {
+                        intersection.put(e.getKey(), e.getValue() + weight);
+                    }
+                }
+                scores = intersection;
+            }
+
+            if (scores.isEmpty()) {
+                return new PageImpl<>(List.of(), pageable, 0);
+            }
+        }
+
+        List<Map.Entry<Long, Float>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<Long, Float>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+
+        int from = (int) Math.min(pageable.getOffset(), ranked.size());
+        int to = Math.min(from + pageable.getPageSize(), ranked.size());
+
+        List<Long> ids = new ArrayList<>(to - from);
+        for (Map.Entry<Long, Float> e : ranked.subList(from, to)) {
+            ids.add(e.getKey());
+        }
+        return new PageImpl<>(ids, pageable, ranked.size());
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private void apply(Consumer<Segment> change) {
+        swapLock.readLock().lock();
+        try {
+            change.accept(segment);
+            Queue<Consumer<Segment>> changes = changesDuringRebuild;
+            if (changes != null) {
+                changes.add(change);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private static void replay(Queue<Consumer<Segment>> changes, Segment target) {
+        Consumer<Segment> change;
+        while ((change = changes.poll()) != null) {
+            change.accept(target);
+        }
+    }
+
+    private static Map<String, Float> weights(Book book) {
+        Map<String, Float> weights = new HashMap<>();
+        addField(weights, book.getIsbn(), ISBN_WEIGHT);
+        if (book.getIsbn() != null) {
+            // lets "9780134685991" find "978-0-13-468599-1"
+            addField(weights, book.getIsbn().replaceAll("[^0-9Xx]", ""), ISBN_WEIGHT);
+        }
+        addField(weights, book.getTitle(), TITLE_WEIGHT);
+        addField(weights, book.getAuthor(), AUTHOR_WEIGHT);
+        addField(weights, book.getCategory(), CATEGORY_WEIGHT);
+        addField(weights, book.getDescription(), DESCRIPTION_WEIGHT);
+        return weights;
+    }
+
+    private static void addField(Map<String, Float> weights, String value, float weight) {
+        for (String term : tokenize(value)) {
+            weights.merge(term, weight, Float::sum);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+
+        Set<String> terms = new LinkedHashSet<>();
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                terms.add(token);
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * One complete index: postings, the sorted term set and the terms per book.
+     */
+    private static final class Segment {
+
+        // term -> (book id -> weight)
+        private final Map<String, Map<Long, Float>> postings = new ConcurrentHashMap<>();
+
+        // sorted view of the indexed terms so prefix lookups are a sub-set range;
+        // only mutated inside postings.compute() so it stays in step with the postings
+        private final ConcurrentSkipListSet<String> terms = new ConcurrentSkipListSet<>();
+
+        // book id -> terms currently indexed for it, used to unindex on update/delete
+        private final Map<Long, Set<String>> documentTerms = new ConcurrentHashMap<>();
+
+        void index(Long id, Map<String, Float> weights) {
+            // compute() serialises concurrent updates of the same book
+            documentTerms.compute(id, (key, previous) -> {
+                if (previous != null) {
+                    for (String term : previous) {
+                        if (!weights.containsKey(term)) {
+                            removePosting(term, id);
+                        }
+                    }
+                }
+                weights.forEach((term, weight) -> addPosting(term, id, weight));
+                return Set.copyOf(weights.keySet());
+            });
+        }
+
+        void remove(Long id) {
+            documentTerms.computeIfPresent(id, (key, indexed) -> {
+                for (String term : indexed) {
+                    removePosting(term, id);
+                }
+                return null;
+            });
+        }
+
+        Map<Long, Float> lookup(String term, boolean prefix) {
+            Map<Long, Float> result = new HashMap<>();
+
+            if (!prefix) {
+                Map<Long, Float> exact = postings.get(term);
+                if (exact != null) {
+                    result.putAll(exact);
+                }
+                return result;
+            }
+
+            // a document matching several expansions keeps its best weight
+            for (String expansion : terms.subSet(term, true, term + Character.MAX_VALUE, false)) {
+                Map<Long, Float> posting = postings.get(expansion);
+                if (posting != null) {
+                    posting.forEach((id, weight) -> result.merge(id, weight, Math::max));
+                }
+            }
+            return result;
+        }
+
+        private void addPosting(String term, Long id, float weight) {
+            postings.compute(term, (t, posting) -> {
+                if (posting == null) {
+                    posting = new ConcurrentHashMap<>();
+                    terms.add(t);
+                }
+                posting.put(id, weight);
+                return posting;
+            });
+        }
+
+        private void removePosting(String term, Long id) {
+            postings.computeIfPresent(term, (t, posting) -> {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    terms.remove(t);
+                    return null;
+                }
+                return posting;
+            });
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.wldu.webservices.services.contracts;
 
 import org.springframework.stereotype.Service;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -10,17 +11,58 @@ import org.wldu.webservices.exception.BadRequestException;
 import org.wldu.webservices.exception.GlobalExceptionHandler;
 import org.wldu.webservices.repositories.BookRepository;
 import org.wldu.webservices.exception.ResourceNotFoundException;
+import org.wldu.webservices.pagination.KeysetPage;
+import org.wldu.webservices.pagination.KeysetPager;
+import org.wldu.webservices.pagination.ProjectionQuery;
+import org.wldu.webservices.pagination.RecordCountCache;
+import org.wldu.webservices.pagination.SparseFieldset;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class BookService {
 
-    private final BookRepository bookRepository;
+    static final String TABLE = "books";
+
+    private static final Set<String> SORTABLE_FIELDS = Set.of(
+            "id", "title", "author", "isbn", "category", "publishedYear",
+            "price", "totalCopies", "copiesAvailable", "createdAt", "updatedAt"
+    );
+
+    // columns a list client may request with fields=; borrowedBooks is never selectable
+    private static final Set<String> SELECTABLE_FIELDS = Set.of(
+            "id", "title", "author", "isbn", "category", "publishedYear", "description",
+            "price", "coverImageUrl", "totalCopies", "copiesAvailable", "createdAt", "updatedAt"
+    );
 
-    public BookService(BookRepository bookRepository){
+    // list default: everything the catalog shows; the frontend edits a book from its list row
+    private static final List<String> LIST_FIELDS = List.of(
+            "title", "author", "isbn", "category", "publishedYear", "description",
+            "price", "coverImageUrl", "totalCopies", "copiesAvailable"
+    );
+
+    private final BookRepository bookRepository;
+    private final BookSearchIndex bookSearchIndex;
+    private final KeysetPager keysetPager;
+    private final ProjectionQuery projectionQuery;
+    private final RecordCountCache recordCountCache;
+    private final DashboardStatsService dashboardStatsService;
+
+    public BookService(BookRepository bookRepository,
+                       BookSearchIndex bookSearchIndex,
+                       KeysetPager keysetPager,
+                       ProjectionQuery projectionQuery,
+                       RecordCountCache recordCountCache,
+                       DashboardStatsService dashboardStatsService){
         this.bookRepository = bookRepository;
+        this.bookSearchIndex = bookSearchIndex;
+        this.keysetPager = keysetPager;
+        this.projectionQuery = projectionQuery;
+        this.recordCountCache = recordCountCache;
+        this.dashboardStatsService = dashboardStatsService;
     }
 
     /* =======================
@@ -41,7 +83,11 @@ public class BookService {
         }
         book.setUpdatedAt(LocalDateTime.now());
 
-        return bookRepository.save(book);
+        Book saved = bookRepository.save(book);
+        bookSearchIndex.index(saved);
+        recordCountCache.invalidate(TABLE);
+        dashboardStatsService.bookAdded();
+        return saved;
     }
 
     /* =======================
@@ -56,6 +102,9 @@ public class BookService {
         }
 
         bookRepository.deleteById(id);
+        bookSearchIndex.remove(id);
+        recordCountCache.invalidate(TABLE);
+        dashboardStatsService.bookDeleted();
     }
 
     /* =======================
@@ -70,7 +119,6 @@ public class BookService {
                     book.setIsbn(updatedBook.getIsbn());
                     book.setCategory(updatedBook.getCategory());
                     book.setPublishedYear(updatedBook.getPublishedYear());
-                    book.setDescription(updatedBook.getDescription());
                     book.setCoverImageUrl(updatedBook.getCoverImageUrl());
                     book.setTotalCopies(updatedBook.getTotalCopies());
                     book.setCopiesAvailable(updatedBook.getCopiesAvailable());
@@ -80,8 +128,15 @@ public class BookService {
                         book.setPrice(updatedBook.getPrice());
                     }
 
+                    // a client that listed with fields= may not have the description
+                    if (updatedBook.getDescription() != null) {
+                        book.setDescription(updatedBook.getDescription());
+                    }
+
                     book.setUpdatedAt(LocalDateTime.now());
-                    return bookRepository.save(book);
+                    Book saved = bookRepository.save(book);
+                    bookSearchIndex.index(saved);
+                    return saved;
                 })
                 .orElseThrow(() ->
                         new ResourceNotFoundException(
@@ -93,12 +148,13 @@ public class BookService {
     /* =======================
        PAGINATION + SEARCH
        ======================= */
-    public Page<Book> getBooks(
+    public Page<Map<String, Object>> getBooks(
             String search,
             int page,
             int size,
             String sortBy,
-            String sortDir
+            String sortDir,
+            String fields
     ) {
 
         if (page < 0 || size <= 0) {
@@ -107,16 +163,80 @@ public class BookService {
             );
         }
 
+        if (!SORTABLE_FIELDS.contains(sortBy)) {
+            throw new BadRequestException("Cannot sort by: " + sortBy);
+        }
+
         Sort sort = sortDir.equalsIgnoreCase("asc")
                 ? Sort.by(sortBy).ascending()
                 : Sort.by(sortBy).descending();
 
         Pageable pageable = PageRequest.of(page, size, sort);
 
+        List<Map<String, Object>> rows = projectionQuery.page(
+                Book.class, fieldset(fields), "title", search, pageable
+        );
+
+        return new PageImpl<>(rows, pageable, countBooks(search));
+    }
+
+    /* =======================
+       KEYSET PAGINATION
+       ======================= */
+    public KeysetPage<Map<String, Object>> getBooksAfter(
+            String search,
+            String cursor,
+            int size,
+            String sortBy,
+            String sortDir,
+            String fields
+    ) {
+        return keysetPager.fetch(
+                Book.class, SORTABLE_FIELDS, fieldset(fields), "title",
+                search, sortBy, sortDir, cursor, size
+        );
+    }
+
+    public long countBooks(String search) {
         if (search != null && !search.isEmpty()) {
-            return bookRepository.findByTitleContainingIgnoreCase(search, pageable);
+            return recordCountCache.count(TABLE, search,
+                    () -> bookRepository.countByTitleContainingIgnoreCase(search));
         }
+        return recordCountCache.count(TABLE, null, bookRepository::count);
+    }
+
+    /* =======================
+       FULL-TEXT SEARCH (INDEX)
+       ======================= */
+    public Page<Map<String, Object>> searchBooks(String query, int page, int size, String fields) {
+
+        if (page < 0 || size <= 0) {
+            throw new BadRequestException(
+                    "Page index must be >= 0 and size must be > 0"
+            );
+        }
+
+        SparseFieldset fieldset = fieldset(fields);
+        Pageable pageable = PageRequest.of(page, size);
+
+        // the index is built once the application is ready; until then fall back to the title match
+        if (!bookSearchIndex.isReady()) {
+            String title = query == null ? "" : query;
+            List<Map<String, Object>> rows = projectionQuery.page(
+                    Book.class, fieldset, "title", title, PageRequest.of(page, size, Sort.by("title"))
+            );
+            return new PageImpl<>(rows, pageable, countBooks(title));
+        }
+
+        Page<Long> hits = bookSearchIndex.search(query, pageable);
+
+        // keeps the ranking order of the index; ids deleted since they were indexed are skipped
+        List<Map<String, Object>> ranked = projectionQuery.byIds(Book.class, fieldset, hits.getContent());
+
+        return new PageImpl<>(ranked, pageable, hits.getTotalElements());
+    }
 
-        return bookRepository.findAll(pageable);
+    private static SparseFieldset fieldset(String fields) {
+        return SparseFieldset.parse(fields, SELECTABLE_FIELDS, LIST_FIELDS);
     }
 }
@@ -1,7 +1,27 @@
 package org.wldu.webservices.services.contracts;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.wldu.webservices.dto.BatchCirculationRequest;
+import org.wldu.webservices.dto.BatchCirculationResult;
+import org.wldu.webservices.dto.BatchItemResult;
+import org.wldu.webservices.dto.BorrowRecordRow;
 import org.wldu.webservices.entities.Book;
 import org.wldu.webservices.entities.BorrowBook;
 import org.wldu.webservices.entities.Customer;
@@ -11,21 +31,102 @@ import org.wldu.webservices.repositories.BookRepository;
 import org.wldu.webservices.repositories.BorrowRepository;
 import org.wldu.webservices.repositories.CustomerRepository;
 
-
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 public class BorrowService {
 
+    private static final int DEFAULT_BORROW_DAYS = 14;
+    private static final int MAX_BATCH_ITEMS = 50;
+
+    // locks the requested books in id order, takes a copy of each one that has one left
+    // and inserts the loans for exactly those, all in one statement
+    private static final String BATCH_CHECKOUT_SQL = """
+            WITH requested AS (
+                SELECT id FROM books
+                WHERE id = ANY (?)
+                ORDER BY id
+                FOR UPDATE
+            ), taken AS (
+                UPDATE books b
+                SET copies_available = b.copies_available - 1,
+                    version          = COALESCE(b.version, 0) + 1
+                FROM requested r
+                WHERE b.id = r.id AND b.copies_available > 0
+                RETURNING b.id
+            ), inserted AS (
+                INSERT INTO borrow_books (version, customer_id, book_id, borrow_date, return_date,
+                                          returned, broken_pages, late_penalty, lost, lost_price, status)
+                SELECT 0, ?, t.id, ?, ?, false, 0, 0, false, 0, false
+                FROM taken t
+                RETURNING id, book_id
+            )
+            SELECT r.id, i.id FROM requested r LEFT JOIN inserted i ON i.book_id = r.id
+            """;
+
+    // closes the customer's oldest open loan of each book, charging overdue ones up to today
+    // (unless the fee was set by hand), then gives the copies back (books locked in id order, like checkout)
+    private static final String BATCH_RETURN_SQL = """
+            WITH open_loans AS (
+                SELECT DISTINCT ON (book_id) id, late_penalty
+                FROM borrow_books
+                WHERE customer_id = ? AND book_id = ANY (?) AND returned = false
+                ORDER BY book_id, borrow_date, id
+            ), closed AS (
+                UPDATE borrow_books bb
+                SET returned     = true,
+                    late_penalty = CASE
+                                       WHEN bb.return_date < ? AND bb.late_penalty_manual = false
+                                           THEN (CAST(? AS date) - CAST(bb.return_date AS date)) * ?
+                                       ELSE bb.late_penalty
+                                   END,
+                    version      = COALESCE(bb.version, 0) + 1
+                FROM open_loans o
+                WHERE bb.id = o.id AND bb.returned = false
+                RETURNING bb.id, bb.book_id, o.late_penalty AS previous_late_penalty, bb.late_penalty,
+                          bb.broken_pages, bb.lost, bb.lost_price, bb.status
+            ), locked AS (
+                SELECT id FROM books
+                WHERE id IN (SELECT book_id FROM closed)
+                ORDER BY id
+                FOR UPDATE
+            ), restocked AS (
+                UPDATE books b
+                SET copies_available = b.copies_available + 1,
+                    version          = COALESCE(b.version, 0) + 1
+                FROM locked l
+                WHERE b.id = l.id
+            )
+            SELECT * FROM closed
+            """;
+
     private final BorrowRepository borrowRepo;
     private final CustomerRepository customerRepo;
     private final BookRepository bookRepo;
+    private final CirculationOutbox outbox;
+    private final HoldService holdService;
+    private final PenaltyBalanceService balances;
+    private final JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     /* =======================
        BORROW BOOK
        ======================= */
+    @Transactional
     public BorrowBook borrowBook(Long customerId, Long bookId, int days) {
 
         if (days <= 0) {
@@ -34,6 +135,19 @@ public class BorrowService {
             );
         }
 
+        // a copy set aside for the customer's hold is already off the shelf;
+        // otherwise take the copy first: the conditional UPDATE is the only availability check
+        if (!holdService.claimReadyCopy(customerId, bookId) && bookRepo.takeCopy(bookId) == 0) {
+            if (!bookRepo.existsById(bookId)) {
+                throw new ResourceNotFoundException(
+                        "Book not found with id: " + bookId
+                );
+            }
+            throw new BadRequestException(
+                    "No copies available for this book"
+            );
+        }
+
         Customer customer = customerRepo.findById(customerId)
                 .orElseThrow(() ->
                         new ResourceNotFoundException(
@@ -48,12 +162,6 @@ public class BorrowService {
                         )
                 );
 
-        if (book.getCopiesAvailable() == null || book.getCopiesAvailable() <= 0) {
-            throw new BadRequestException(
-                    "No copies available for this book"
-            );
-        }
-
         BorrowBook borrow = new BorrowBook();
         borrow.setCustomer(customer);
         borrow.setBook(book);
@@ -61,71 +169,180 @@ public class BorrowService {
         borrow.setReturnDate(LocalDateTime.now().plusDays(days));
         borrow.setReturned(false);
 
-        // decrease copies
-        book.setCopiesAvailable(book.getCopiesAvailable() - 1);
-        bookRepo.save(book);
-
-        return borrowRepo.save(borrow);
+        BorrowBook saved = borrowRepo.save(borrow);
+        outbox.record(CirculationOutbox.EventType.BORROWED, saved.getId(), customerId, bookId,
+                Map.of("dueDate", saved.getReturnDate().toString()));
+        return saved;
     }
 
     /* =======================
        RETURN BOOK
        ======================= */
+    @Transactional
     public BorrowBook returnBook(Long id) {
 
-        BorrowBook borrow = borrowRepo.findById(id)
-                .orElseThrow(() ->
-                        new ResourceNotFoundException(
-                                "Borrow record not found with id: " + id
-                        )
-                );
+        BorrowBook borrow = findBorrow(id);
 
-        if (borrow.isReturned()) {
+        if (borrowRepo.updateReturned(id, true) == 0) {
             throw new BadRequestException(
                     "Book is already returned"
             );
         }
 
-        borrow.setReturned(true);
-
-        Book book = borrow.getBook();
-        book.setCopiesAvailable(book.getCopiesAvailable() + 1);
-        bookRepo.save(book);
+        bookRepo.returnCopy(borrow.getBook().getId());
+        holdService.copyReturned(borrow.getBook().getId());
+        settleLateFee(borrow);
 
-        return borrowRepo.save(borrow);
+        BorrowBook returned = findBorrow(id);
+        outbox.record(CirculationOutbox.EventType.RETURNED, id, returned.getCustomer().getId(),
+                returned.getBook().getId(), Map.of("latePenalty", orZero(returned.getLatePenalty())));
+        return returned;
     }
 
     /* =======================
        UNDO RETURN
        ======================= */
+    @Transactional
     public BorrowBook undoReturnBook(Long id) {
 
-        BorrowBook borrow = borrowRepo.findById(id)
-                .orElseThrow(() ->
-                        new ResourceNotFoundException(
-                                "Borrow record not found with id: " + id
-                        )
-                );
+        BorrowBook borrow = findBorrow(id);
 
-        if (!borrow.isReturned()) {
+        if (borrowRepo.updateReturned(id, false) == 0) {
             throw new BadRequestException(
                     "Borrow record is not marked as returned"
             );
         }
 
-        Book book = borrow.getBook();
-
-        if (book.getCopiesAvailable() == null || book.getCopiesAvailable() <= 0) {
+        // rolls back the flag change above when the copy has been lent out again
+        if (bookRepo.takeCopy(borrow.getBook().getId()) == 0) {
             throw new BadRequestException(
                     "Cannot undo return, no available copies to decrease"
             );
         }
+        outbox.record(CirculationOutbox.EventType.RETURN_UNDONE, id, borrow.getCustomer().getId(),
+                borrow.getBook().getId(), Map.of());
 
-        borrow.setReturned(false);
-        book.setCopiesAvailable(book.getCopiesAvailable() - 1);
+        return findBorrow(id);
+    }
+
+    /* =======================
+       BATCH CHECKOUT / RETURN
+       ======================= */
+
+    /**
+     * Checks out several books to one customer in a single round trip.
+     * Books without a free copy are reported per item; the others are still lent.
+     */
+    @Transactional
+    public BatchCirculationResult borrowBooks(BatchCirculationRequest request) {
+
+        int days = request.days() == null ? DEFAULT_BORROW_DAYS : request.days();
+        if (days <= 0) {
+            throw new BadRequestException(
+                    "Borrow days must be greater than zero"
+            );
+        }
+
+        List<Long> bookIds = batchBookIds(request);
+        requireCustomer(request.customerId());
+
+        // copies set aside for this customer's holds go back on the shelf (row still locked
+        // by this transaction) and are taken again by the checkout statement
+        for (Long bookId : distinct(bookIds.stream().sorted().toList())) {
+            if (holdService.claimReadyCopy(request.customerId(), bookId)) {
+                bookRepo.returnCopy(bookId);
+            }
+        }
+
+        bookRepo.beforeBulkUpdate(bookIds);
+        LocalDateTime now = LocalDateTime.now();
+
+        // book id -> new borrow id; null when the book had no copy left
+        Map<Long, Long> loans = new HashMap<>();
+        jdbcTemplate.query(BATCH_CHECKOUT_SQL, rs -> {
+                    long bookId = rs.getLong(1);
+                    long borrowId = rs.getLong(2);
+                    // wasNull() reports on the last column read
+                    loans.put(bookId, rs.wasNull() ? null : borrowId);
+                },
+                distinct(bookIds), request.customerId(),
+                Timestamp.valueOf(now), Timestamp.valueOf(now.plusDays(days)));
+
+        List<BatchItemResult> items = new ArrayList<>(bookIds.size());
+        Set<Long> seen = new HashSet<>();
+        List<CirculationOutbox.PendingEvent> events = new ArrayList<>();
+        Map<String, Object> dueDate = Map.of("dueDate", now.plusDays(days).toString());
+        for (Long bookId : bookIds) {
+            if (!seen.add(bookId)) {
+                items.add(new BatchItemResult(bookId, BatchItemResult.Status.DUPLICATE, null));
+            } else if (!loans.containsKey(bookId)) {
+                items.add(new BatchItemResult(bookId, BatchItemResult.Status.NOT_FOUND, null));
+            } else if (loans.get(bookId) == null) {
+                items.add(new BatchItemResult(bookId, BatchItemResult.Status.UNAVAILABLE, null));
+            } else {
+                items.add(new BatchItemResult(bookId, BatchItemResult.Status.BORROWED, loans.get(bookId)));
+                events.add(new CirculationOutbox.PendingEvent(CirculationOutbox.EventType.BORROWED,
+                        loans.get(bookId), request.customerId(), bookId, dueDate));
+            }
+        }
+
+        outbox.recordAll(events);
+        return BatchCirculationResult.of(request.customerId(), items);
+    }
+
+    /**
+     * Returns several books of one customer in a single round trip.
+     */
+    @Transactional
+    public BatchCirculationResult returnBooks(BatchCirculationRequest request) {
+
+        List<Long> bookIds = batchBookIds(request);
+        requireCustomer(request.customerId());
+
+        // book id -> closed borrow id
+        Map<Long, Long> closed = new HashMap<>();
+        PenaltyBalanceService.BalanceChanges charges = new PenaltyBalanceService.BalanceChanges();
+        List<CirculationOutbox.PendingEvent> events = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        bookRepo.beforeBulkUpdate(bookIds);
+        jdbcTemplate.query(BATCH_RETURN_SQL, (RowCallbackHandler) rs -> {
+                    closed.put(rs.getLong("book_id"), rs.getLong("id"));
+                    events.add(new CirculationOutbox.PendingEvent(CirculationOutbox.EventType.RETURNED,
+                            rs.getLong("id"), request.customerId(), rs.getLong("book_id"),
+                            Map.of("latePenalty", orZero(rs.getObject("late_penalty", Double.class)))));
+
+                    Boolean resolved = rs.getObject("status", Boolean.class);
+                    Integer brokenPages = rs.getObject("broken_pages", Integer.class);
+                    Boolean lost = rs.getObject("lost", Boolean.class);
+                    Double lostPrice = rs.getObject("lost_price", Double.class);
+                    charges.add(request.customerId(),
+                            balances.amountDue(resolved, rs.getObject("previous_late_penalty", Double.class),
+                                    brokenPages, lost, lostPrice),
+                            balances.amountDue(resolved, rs.getObject("late_penalty", Double.class),
+                                    brokenPages, lost, lostPrice));
+                },
+                request.customerId(), distinct(bookIds), now, now, balances.getLateFeePerDay());
+
+        balances.apply(charges);
+
+        List<BatchItemResult> items = new ArrayList<>(bookIds.size());
+        Set<Long> seen = new HashSet<>();
+        for (Long bookId : bookIds) {
+            if (!seen.add(bookId)) {
+                items.add(new BatchItemResult(bookId, BatchItemResult.Status.DUPLICATE, null));
+            } else if (closed.containsKey(bookId)) {
+                items.add(new BatchItemResult(bookId, BatchItemResult.Status.RETURNED, closed.get(bookId)));
+            } else {
+                items.add(new BatchItemResult(bookId, BatchItemResult.Status.NOT_BORROWED, null));
+            }
+        }
+
+        // returned copies go to waiting holders first
+        closed.keySet().stream().sorted().forEach(holdService::copyReturned);
 
-        bookRepo.save(book);
-        return borrowRepo.save(borrow);
+        outbox.recordAll(events);
+        return BatchCirculationResult.of(request.customerId(), items);
     }
 
     /* =======================
@@ -135,31 +352,158 @@ public class BorrowService {
         return borrowRepo.findAll();
     }
 
+    // the existence check only runs when there are no loans to return
     public List<BorrowBook> getBorrowedBooksByCustomer(Long customerId) {
 
-        if (!customerRepo.existsById(customerId)) {
+        List<BorrowBook> loans = borrowRepo.findByCustomerId(customerId);
+
+        if (loans.isEmpty() && !customerRepo.existsById(customerId)) {
             throw new ResourceNotFoundException(
                     "Customer not found with id: " + customerId
             );
         }
 
-        return borrowRepo.findByCustomerId(customerId);
+        return loans;
     }
 
     public List<BorrowBook> getBorrowedBooksByBook(Long bookId) {
 
-        if (!bookRepo.existsById(bookId)) {
+        List<BorrowBook> loans = borrowRepo.findByBookId(bookId);
+
+        if (loans.isEmpty() && !bookRepo.existsById(bookId)) {
             throw new ResourceNotFoundException(
                     "Book not found with id: " + bookId
             );
         }
 
-        return borrowRepo.findByBookId(bookId);
+        return loans;
+    }
+
+    /* =======================
+       CIRCULATION LISTING
+       ======================= */
+
+    /**
+     * One page of loans, newest first, as flat rows.
+     * Always two queries (rows + count) whatever the page size or history length.
+     */
+    public Page<BorrowRecordRow> getBorrowRecords(
+            Boolean returned,
+            Boolean overdue,
+            LocalDate from,
+            LocalDate to,
+            Long customerId,
+            Long bookId,
+            int page,
+            int size
+    ) {
+
+        if (page < 0 || size <= 0) {
+            throw new BadRequestException(
+                    "Page index must be >= 0 and size must be > 0"
+            );
+        }
+
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new BadRequestException(
+                    "'from' must not be after 'to'"
+            );
+        }
+
+        Pageable pageable = PageRequest.of(page, size);
+        LocalDateTime now = LocalDateTime.now();
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<BorrowRecordRow> query = cb.createQuery(BorrowRecordRow.class);
+        Root<BorrowBook> root = query.from(BorrowBook.class);
+        Join<BorrowBook, Customer> customer = root.join("customer", JoinType.LEFT);
+        Join<BorrowBook, Book> book = root.join("book", JoinType.LEFT);
+
+        query.select(cb.construct(
+                        BorrowRecordRow.class,
+                        root.get("id"),
+                        customer.get("id"),
+                        customer.get("name"),
+                        customer.get("email"),
+                        book.get("id"),
+                        book.get("title"),
+                        book.get("isbn"),
+                        root.get("borrowDate"),
+                        root.get("returnDate"),
+                        root.get("returned"),
+                        root.get("brokenPages"),
+                        root.get("latePenalty"),
+                        root.get("lost"),
+                        root.get("lostPrice"),
+                        root.get("status")
+                ))
+                .where(borrowFilters(cb, root, returned, overdue, from, to, customerId, bookId, now))
+                .orderBy(cb.desc(root.get("borrowDate")), cb.desc(root.get("id")));
+
+        List<BorrowRecordRow> rows = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(size)
+                .getResultList();
+
+        CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+        Root<BorrowBook> countRoot = countQuery.from(BorrowBook.class);
+        countQuery.select(cb.count(countRoot))
+                .where(borrowFilters(cb, countRoot, returned, overdue, from, to, customerId, bookId, now));
+
+        long total = entityManager.createQuery(countQuery).getSingleResult();
+
+        return new PageImpl<>(rows, pageable, total);
+    }
+
+    private Predicate[] borrowFilters(
+            CriteriaBuilder cb,
+            Root<BorrowBook> root,
+            Boolean returned,
+            Boolean overdue,
+            LocalDate from,
+            LocalDate to,
+            Long customerId,
+            Long bookId,
+            LocalDateTime now
+    ) {
+
+        List<Predicate> where = new ArrayList<>();
+        Path<Boolean> returnedPath = root.get("returned");
+        Path<LocalDateTime> borrowDate = root.get("borrowDate");
+        Path<LocalDateTime> dueDate = root.get("returnDate");
+
+        if (returned != null) {
+            where.add(cb.equal(returnedPath, returned));
+        }
+
+        if (overdue != null) {
+            Predicate isOverdue = cb.and(cb.isFalse(returnedPath), cb.lessThan(dueDate, now));
+            where.add(overdue ? isOverdue : cb.or(cb.isTrue(returnedPath), cb.isNull(dueDate),
+                    cb.greaterThanOrEqualTo(dueDate, now)));
+        }
+
+        // borrow date range, both ends inclusive
+        if (from != null) {
+            where.add(cb.greaterThanOrEqualTo(borrowDate, from.atStartOfDay()));
+        }
+        if (to != null) {
+            where.add(cb.lessThan(borrowDate, to.plusDays(1).atStartOfDay()));
+        }
+
+        if (customerId != null) {
+            where.add(cb.equal(root.get("customer").get("id"), customerId));
+        }
+        if (bookId != null) {
+            where.add(cb.equal(root.get("book").get("id"), bookId));
+        }
+
+        return where.toArray(Predicate[]::new);
     }
 
     /* =======================
        UPDATE PENALTY
        ======================= */
+    @Transactional
     public BorrowBook updatePenalty(Long borrowId, BorrowBook penaltyData) {
 
         BorrowBook borrow = borrowRepo.findById(borrowId)
@@ -169,12 +513,95 @@ public class BorrowService {
                         )
                 );
 
+        BigDecimal before = balances.amountDue(borrow);
+
+        // a late fee changed here is kept as is by the overdue scan and on return
+        if (!Objects.equals(borrow.getLatePenalty(), penaltyData.getLatePenalty())) {
+            borrow.setLatePenaltyManual(true);
+        }
         borrow.setBrokenPages(penaltyData.getBrokenPages());
         borrow.setLatePenalty(penaltyData.getLatePenalty());
         borrow.setLost(penaltyData.getLost());
         borrow.setLostPrice(penaltyData.getLostPrice());
         borrow.setStatus(penaltyData.getStatus());
 
-        return borrowRepo.save(borrow);
+        BorrowBook saved = borrowRepo.save(borrow);
+        BigDecimal after = balances.amountDue(saved);
+        balances.recordChange(saved.getCustomer().getId(), before, after);
+        outbox.record(CirculationOutbox.EventType.PENALTY_UPDATED, borrowId, saved.getCustomer().getId(),
+                saved.getBook().getId(), Map.of("amountDue", after));
+        return saved;
+    }
+
+    // an overdue loan is charged up to the day it came back, not just up to the last overdue scan
+    private void settleLateFee(BorrowBook borrow) {
+        if (borrow.isLatePenaltyManual()) {
+            return;
+        }
+        double fee = balances.lateFee(borrow.getReturnDate(), LocalDateTime.now());
+        Double current = borrow.getLatePenalty();
+        if (fee <= 0 || (current != null && current == fee)) {
+            return;
+        }
+
+        BigDecimal before = balances.amountDue(borrow);
+        borrowRepo.updateLatePenalty(borrow.getId(), fee);
+        BigDecimal after = balances.amountDue(borrow.getStatus(), fee, borrow.getBrokenPages(),
+                borrow.getLost(), borrow.getLostPrice());
+        balances.recordChange(borrow.getCustomer().getId(), before, after);
+    }
+
+    private List<Long> batchBookIds(BatchCirculationRequest request) {
+
+        if (request.customerId() == null) {
+            throw new BadRequestException(
+                    "customerId is required"
+            );
+        }
+
+        List<Long> bookIds = request.bookIds();
+        if (bookIds == null || bookIds.isEmpty()) {
+            throw new BadRequestException(
+                    "bookIds must not be empty"
+            );
+        }
+        if (bookIds.size() > MAX_BATCH_ITEMS) {
+            throw new BadRequestException(
+                    "At most " + MAX_BATCH_ITEMS + " books per batch"
+            );
+        }
+        // contains(null) throws on immutable lists
+        if (bookIds.stream().anyMatch(Objects::isNull)) {
+            throw new BadRequestException(
+                    "bookIds must not contain null"
+            );
+        }
+
+        return bookIds;
+    }
+
+    private void requireCustomer(Long customerId) {
+        if (!customerRepo.existsById(customerId)) {
+            throw new ResourceNotFoundException(
+                    "Customer not found with id: " + customerId
+            );
+        }
+    }
+
+    private static double orZero(Double value) {
+        return value == null ? 0 : value;
+    }
+
+    private static Long[] distinct(List<Long> ids) {
+        return new LinkedHashSet<>(ids).toArray(Long[]::new);
+    }
+
+    private BorrowBook findBorrow(Long id) {
+        return borrowRepo.findById(id)
+                .orElseThrow(() ->
+                        new ResourceNotFoundException(
+                                "Borrow record not found with id: " + id
+                        )
+                );
     }
 }
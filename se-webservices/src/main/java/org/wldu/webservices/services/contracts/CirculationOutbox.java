@@ -0,0 +1,83 @@
+package org.wldu.webservices.services.contracts;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes circulation events to outbox_events in the caller's transaction.
+ * An event exists exactly when the change it describes committed; the
+ * {@link OutboxRelay} fans it out to notifications, dashboard counters and
+ * websocket topics afterwards, off the request thread.
+ */
+@Component
+public class CirculationOutbox {
+
+    public enum EventType {
+        BORROWED,
+        RETURNED,
+        RETURN_UNDONE,
+        PENALTY_UPDATED,
+        HOLD_READY
+    }
+
+    /**
+     * One event to be written; borrowId is null for events not tied to a loan.
+     */
+    public record PendingEvent(EventType type, Long borrowId, Long customerId, Long bookId,
+                               Map<String, Object> details) {
+    }
+
+    private static final String INSERT_SQL = """
+            INSERT INTO outbox_events (event_type, borrow_id, customer_id, book_id, payload, created_at)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public CirculationOutbox(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(EventType type, Long borrowId, Long customerId, Long bookId, Map<String, Object> details) {
+        recordAll(List.of(new PendingEvent(type, borrowId, customerId, bookId, details)));
+    }
+
+    // one JDBC batch for all events of a unit of work
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordAll(List<PendingEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, events.size(), (ps, event) -> {
+            ps.setString(1, event.type().name());
+            ps.setObject(2, event.borrowId(), Types.BIGINT);
+            ps.setObject(3, event.customerId(), Types.BIGINT);
+            ps.setObject(4, event.bookId(), Types.BIGINT);
+            ps.setString(5, toJson(event.details()));
+            ps.setTimestamp(6, now);
+        });
+    }
+
+    private String toJson(Map<String, Object> details) {
+        try {
+            return objectMapper.writeValueAsString(details == null ? Map.of() : details);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Event details are not serializable", ex);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.wldu.webservices.services.contracts;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -8,18 +9,47 @@ import org.springframework.stereotype.Service;
 import org.wldu.webservices.entities.Customer;
 import org.wldu.webservices.exception.BadRequestException;
 import org.wldu.webservices.exception.ResourceNotFoundException;
+import org.wldu.webservices.pagination.KeysetPage;
+import org.wldu.webservices.pagination.KeysetPager;
+import org.wldu.webservices.pagination.ProjectionQuery;
+import org.wldu.webservices.pagination.RecordCountCache;
+import org.wldu.webservices.pagination.SparseFieldset;
 import org.wldu.webservices.repositories.CustomerRepository;
 
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class CustomerService {
 
-    private final CustomerRepository customerRepository;
+    private static final String TABLE = "customers";
+
+    private static final Set<String> SORTABLE_FIELDS = Set.of(
+            "id", "name", "email", "phoneNumber", "role", "createdAt"
+    );
+
+    private static final List<String> LIST_FIELDS = List.of(
+            "name", "email", "phoneNumber", "role", "createdAt"
+    );
 
-    public CustomerService(CustomerRepository customerRepository) {
+    private final CustomerRepository customerRepository;
+    private final KeysetPager keysetPager;
+    private final ProjectionQuery projectionQuery;
+    private final RecordCountCache recordCountCache;
+    private final DashboardStatsService dashboardStatsService;
+
+    public CustomerService(CustomerRepository customerRepository,
+                           KeysetPager keysetPager,
+                           ProjectionQuery projectionQuery,
+                           RecordCountCache recordCountCache,
+                           DashboardStatsService dashboardStatsService) {
         this.customerRepository = customerRepository;
+        this.keysetPager = keysetPager;
+        this.projectionQuery = projectionQuery;
+        this.recordCountCache = recordCountCache;
+        this.dashboardStatsService = dashboardStatsService;
     }
 
     /* =======================
@@ -43,7 +73,10 @@ public class CustomerService {
             customer.setRole("STUDENT");
         }
 
-        return customerRepository.save(customer);
+        Customer saved = customerRepository.save(customer);
+        recordCountCache.invalidate(TABLE);
+        dashboardStatsService.customerAdded();
+        return saved;
     }
 
     /* =======================
@@ -117,6 +150,8 @@ public class CustomerService {
         }
 
         customerRepository.deleteById(id);
+        recordCountCache.invalidate(TABLE);
+        dashboardStatsService.customerDeleted();
     }
 
     /* =======================
@@ -133,12 +168,13 @@ public class CustomerService {
     /* =======================
        PAGINATION
        ======================= */
-    public Page<Customer> getCustomers(
+    public Page<Map<String, Object>> getCustomers(
             String search,
             int page,
             int size,
             String sortBy,
-            String sortDir
+            String sortDir,
+            String fields
     ) {
 
         if (page < 0 || size <= 0) {
@@ -147,16 +183,49 @@ public class CustomerService {
             );
         }
 
+        if (!SORTABLE_FIELDS.contains(sortBy)) {
+            throw new BadRequestException("Cannot sort by: " + sortBy);
+        }
+
         Sort sort = sortDir.equalsIgnoreCase("asc")
                 ? Sort.by(sortBy).ascending()
                 : Sort.by(sortBy).descending();
 
         Pageable pageable = PageRequest.of(page, size, sort);
 
+        List<Map<String, Object>> rows = projectionQuery.page(
+                Customer.class, fieldset(fields), "name", search, pageable
+        );
+
+        return new PageImpl<>(rows, pageable, countCustomers(search));
+    }
+
+    /* =======================
+       KEYSET PAGINATION
+       ======================= */
+    public KeysetPage<Map<String, Object>> getCustomersAfter(
+            String search,
+            String cursor,
+            int size,
+            String sortBy,
+            String sortDir,
+            String fields
+    ) {
+        return keysetPager.fetch(
+                Customer.class, SORTABLE_FIELDS, fieldset(fields), "name",
+                search, sortBy, sortDir, cursor, size
+        );
+    }
+
+    public long countCustomers(String search) {
         if (search != null && !search.isEmpty()) {
-            return customerRepository.findByNameContainingIgnoreCase(search, pageable);
+            return recordCountCache.count(TABLE, search,
+                    () -> customerRepository.countByNameContainingIgnoreCase(search));
         }
+        return recordCountCache.count(TABLE, null, customerRepository::count);
+    }
 
-        return customerRepository.findAll(pageable);
+    private static SparseFieldset fieldset(String fields) {
+        return SparseFieldset.parse(fields, SORTABLE_FIELDS, LIST_FIELDS);
     }
 }
@@ -0,0 +1,208 @@
+package org.wldu.webservices.services.contracts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.wldu.webservices.auths.UsersRepository;
+import org.wldu.webservices.dto.DashboardUpdate;
+import org.wldu.webservices.repositories.BookRepository;
+import org.wldu.webservices.repositories.BorrowRepository;
+import org.wldu.webservices.repositories.CustomerRepository;
+import org.wldu.webservices.transaction.TransactionHooks;
+import org.wldu.webservices.websocket.CoalescingMessagePublisher;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admin dashboard counters kept in memory.
+ * Seeded from the database once the application is ready, moved by the services
+ * as books, customers, users and loans change, and periodically reconciled with
+ * real counts so a missed event can only skew the numbers until the next run.
+ * Changes are pushed to {@value #TOPIC} so open dashboards do not poll; a burst
+ * of changes is merged into one push.
+ */
+@Service
+public class DashboardStatsService {
+
+    public static final String TOPIC = "/topic/dashboard";
+
+    private static final Logger log = LoggerFactory.getLogger(DashboardStatsService.class);
+
+    public enum Stat {
+        USERS("users"),
+        BOOKS("books"),
+        CUSTOMERS("customers"),
+        BORROWED("borrowed"),
+        RETURNED("returned");
+
+        private final String key;
+
+        Stat(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+    }
+
+    private final UsersRepository usersRepository;
+    private final BookRepository bookRepository;
+    private final CustomerRepository customerRepository;
+    private final BorrowRepository borrowRepository;
+    private final CoalescingMessagePublisher publisher;
+
+    private final Map<Stat, AtomicLong> counters = new EnumMap<>(Stat.class);
+
+    private volatile boolean seeded = false;
+
+    public DashboardStatsService(UsersRepository usersRepository,
+                                 BookRepository bookRepository,
+                                 CustomerRepository customerRepository,
+                                 BorrowRepository borrowRepository,
+                                 CoalescingMessagePublisher publisher) {
+        this.usersRepository = usersRepository;
+        this.bookRepository = bookRepository;
+        this.customerRepository = customerRepository;
+        this.borrowRepository = borrowRepository;
+        this.publisher = publisher;
+
+        for (Stat stat : Stat.values()) {
+            counters.put(stat, new AtomicLong());
+        }
+    }
+
+    /* =======================
+       SEED + RECONCILE
+       ======================= */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        reconcile();
+        seeded = true;
+    }
+
+    /**
+     * Replaces the counters with real counts. A loan committed while the counts run
+     * may be counted twice or not at all; the next run corrects it.
+     */
+    @Scheduled(
+            initialDelayString = "${app.dashboard.reconcile-interval-ms:300000}",
+            fixedDelayString = "${app.dashboard.reconcile-interval-ms:300000}"
+    )
+    public void reconcile() {
+        Map<Stat, Long> actual = new EnumMap<>(Stat.class);
+        actual.put(Stat.USERS, usersRepository.count());
+        actual.put(Stat.BOOKS, bookRepository.count());
+        actual.put(Stat.CUSTOMERS, customerRepository.count());
+        actual.put(Stat.BORROWED, borrowRepository.countByReturnedFalse());
+        actual.put(Stat.RETURNED, borrowRepository.countByReturnedTrue());
+
+        Map<Stat, Long> drift = new EnumMap<>(Stat.class);
+        actual.forEach((stat, value) -> {
+            long previous = counters.get(stat).getAndSet(value);
+            if (previous != value) {
+                drift.put(stat, value - previous);
+            }
+        });
+
+        if (seeded && !drift.isEmpty()) {
+            log.info("Dashboard stats reconciled, drift: {}", drift);
+        }
+        if (!drift.isEmpty()) {
+            publish(drift);
+        }
+    }
+
+    /* =======================
+       EVENTS
+       ======================= */
+    public void bookAdded() {
+        adjust(Map.of(Stat.BOOKS, 1L));
+    }
+
+    public void bookDeleted() {
+        adjust(Map.of(Stat.BOOKS, -1L));
+    }
+
+    public void customerAdded() {
+        adjust(Map.of(Stat.CUSTOMERS, 1L));
+    }
+
+    public void customerDeleted() {
+        adjust(Map.of(Stat.CUSTOMERS, -1L));
+    }
+
+    public void userRegistered() {
+        adjust(Map.of(Stat.USERS, 1L));
+    }
+
+    public void userDeleted() {
+        adjust(Map.of(Stat.USERS, -1L));
+    }
+
+    public void bookBorrowed() {
+        booksBorrowed(1);
+    }
+
+    public void bookReturned() {
+        booksReturned(1);
+    }
+
+    // batch desk operations: one adjustment (and one push) for the whole batch
+    public void booksBorrowed(long count) {
+        if (count > 0) {
+            adjust(Map.of(Stat.BORROWED, count));
+        }
+    }
+
+    public void booksReturned(long count) {
+        if (count > 0) {
+            adjust(Map.of(Stat.BORROWED, -count, Stat.RETURNED, count));
+        }
+    }
+
+    public void returnUndone() {
+        returnsUndone(1);
+    }
+
+    public void returnsUndone(long count) {
+        if (count > 0) {
+            adjust(Map.of(Stat.BORROWED, count, Stat.RETURNED, -count));
+        }
+    }
+
+    /* =======================
+       READ
+       ======================= */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        counters.forEach((stat, value) -> stats.put(stat.key(), value.get()));
+        return stats;
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+
+    // inside a transaction the change is applied only once it has committed
+    private void adjust(Map<Stat, Long> deltas) {
+        TransactionHooks.afterCommit(() -> apply(deltas));
+    }
+
+    private void apply(Map<Stat, Long> deltas) {
+        deltas.forEach((stat, delta) -> counters.get(stat).addAndGet(delta));
+        publish(deltas);
+    }
+
+    private void publish(Map<Stat, Long> deltas) {
+        Map<String, Long> changes = new LinkedHashMap<>();
+        deltas.forEach((stat, delta) -> changes.put(stat.key(), delta));
+        publisher.publish(TOPIC, new DashboardUpdate(changes, snapshot()), DashboardUpdate::merge);
+    }
+}
@@ -0,0 +1,58 @@
+package org.wldu.webservices.services.contracts;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * In-memory queue of the WAITING holds placed through this instance, so a
+ * return can hand its copy to the next holder without a query.
+ * book_holds stays the source of truth: every move found here is confirmed by
+ * a conditional UPDATE, the index is rebuilt from the table at startup, and a
+ * book this index knows no holder for is looked up in the table.
+ */
+@Component
+public class HoldQueueIndex {
+
+    public record PendingHold(Long holdId, Long customerId) {
+    }
+
+    // book id -> WAITING holds, oldest first
+    private final Map<Long, Deque<PendingHold>> waiting = new ConcurrentHashMap<>();
+
+    public void enqueue(Long bookId, PendingHold hold) {
+        waiting.computeIfAbsent(bookId, id -> new ConcurrentLinkedDeque<>()).addLast(hold);
+    }
+
+    /**
+     * Takes the next holder of the book off the queue, or null when this index has none.
+     */
+    public PendingHold poll(Long bookId) {
+        Deque<PendingHold> queue = waiting.get(bookId);
+        return queue == null ? null : queue.pollFirst();
+    }
+
+    // puts a polled holder back in front (its assignment was rolled back)
+    public void restore(Long bookId, PendingHold hold) {
+        waiting.computeIfAbsent(bookId, id -> new ConcurrentLinkedDeque<>()).addFirst(hold);
+    }
+
+    public void remove(Long bookId, Long holdId) {
+        Deque<PendingHold> queue = waiting.get(bookId);
+        if (queue != null) {
+            queue.removeIf(hold -> hold.holdId().equals(holdId));
+        }
+    }
+
+    public int waitingCount(Long bookId) {
+        Deque<PendingHold> queue = waiting.get(bookId);
+        return queue == null ? 0 : queue.size();
+    }
+
+    public void clear() {
+        waiting.clear();
+    }
+}
@@ -0,0 +1,280 @@
+package org.wldu.webservices.services.contracts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.wldu.webservices.entities.BookHold;
+import org.wldu.webservices.entities.HoldStatus;
+import org.wldu.webservices.exception.BadRequestException;
+import org.wldu.webservices.exception.ResourceNotFoundException;
+import org.wldu.webservices.repositories.BookHoldRepository;
+import org.wldu.webservices.repositories.BookRepository;
+import org.wldu.webservices.repositories.CustomerRepository;
+import org.wldu.webservices.transaction.TransactionHooks;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hold queue for books with no copy left.
+ * A returned copy goes straight to the oldest waiting hold: it is taken off the
+ * shelf again in the same transaction, the hold becomes READY and the customer
+ * is notified, so nobody has to poll the catalog. A READY hold not picked up
+ * within the pickup window expires and the copy moves on to the next holder.
+ * Holds placed through another instance are not in this one's queue index;
+ * they are found in book_holds once the index has no holder for the book.
+ */
+@Service
+public class HoldService {
+
+    private static final Logger log = LoggerFactory.getLogger(HoldService.class);
+
+    private static final List<HoldStatus> ACTIVE = List.of(HoldStatus.WAITING, HoldStatus.READY);
+
+    private final BookHoldRepository holdRepository;
+    private final BookRepository bookRepository;
+    private final CustomerRepository customerRepository;
+    private final HoldQueueIndex queueIndex;
+    private final CirculationOutbox outbox;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration pickupWindow;
+
+    public HoldService(BookHoldRepository holdRepository,
+                       BookRepository bookRepository,
+                       CustomerRepository customerRepository,
+                       HoldQueueIndex queueIndex,
+                       CirculationOutbox outbox,
+                       TransactionTemplate transactionTemplate,
+                       @Value("${app.holds.pickup-days:3}") long pickupDays) {
+        this.holdRepository = holdRepository;
+        this.bookRepository = bookRepository;
+        this.customerRepository = customerRepository;
+        this.queueIndex = queueIndex;
+        this.outbox = outbox;
+        this.transactionTemplate = transactionTemplate;
+        this.pickupWindow = Duration.ofDays(pickupDays);
+    }
+
+    /* =======================
+       INDEX
+       ======================= */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndex() {
+        queueIndex.clear();
+        List<BookHold> waiting = holdRepository.findByStatusInOrderByIdAsc(List.of(HoldStatus.WAITING));
+        for (BookHold hold : waiting) {
+            queueIndex.enqueue(hold.getBookId(), new HoldQueueIndex.PendingHold(hold.getId(), hold.getCustomerId()));
+        }
+        log.info("Hold queue index loaded with {} waiting holds", waiting.size());
+    }
+
+    /* =======================
+       PLACE / CANCEL
+       ======================= */
+    @Transactional
+    public BookHold placeHold(Long customerId, Long bookId) {
+
+        // a return committing meanwhile either waits for this hold or is seen here
+        Integer copiesAvailable = bookRepository.lockCopiesAvailable(bookId)
+                .orElseThrow(() ->
+                        new ResourceNotFoundException(
+                                "Book not found with id: " + bookId
+                        )
+                );
+
+        if (!customerRepository.existsById(customerId)) {
+            throw new ResourceNotFoundException(
+                    "Customer not found with id: " + customerId
+            );
+        }
+
+        if (copiesAvailable > 0) {
+            throw new BadRequestException(
+                    "Copies are available, borrow the book instead"
+            );
+        }
+
+        if (holdRepository.existsByBookIdAndCustomerIdAndStatusIn(bookId, customerId, ACTIVE)) {
+            throw new BadRequestException(
+                    "Customer already has a hold on this book"
+            );
+        }
+
+        BookHold hold = new BookHold();
+        hold.setBookId(bookId);
+        hold.setCustomerId(customerId);
+        BookHold saved = holdRepository.save(hold);
+
+        TransactionHooks.afterCommit(() ->
+                queueIndex.enqueue(bookId, new HoldQueueIndex.PendingHold(saved.getId(), customerId)));
+        return saved;
+    }
+
+    @Transactional
+    public void cancelHold(Long holdId) {
+
+        BookHold hold = holdRepository.findById(holdId)
+                .orElseThrow(() ->
+                        new ResourceNotFoundException(
+                                "Hold not found with id: " + holdId
+                        )
+                );
+        Long bookId = hold.getBookId();
+
+        if (holdRepository.transition(holdId, HoldStatus.WAITING, HoldStatus.CANCELLED) == 1) {
+            TransactionHooks.afterCommit(() -> queueIndex.remove(bookId, holdId));
+            return;
+        }
+
+        // the set-aside copy goes to the next holder, or back on the shelf
+        if (holdRepository.transition(holdId, HoldStatus.READY, HoldStatus.CANCELLED) == 1) {
+            releaseSetAsideCopy(bookId);
+            return;
+        }
+
+        throw new BadRequestException(
+                "Hold is no longer active"
+        );
+    }
+
+    /* =======================
+       CIRCULATION HOOKS
+       ======================= */
+
+    /**
+     * Called by a return right after it put a copy of the book back; that transaction
+     * still holds the book row lock, so the copy can be taken again for the next holder.
+     * When the index knows nobody waiting, the table is asked through its queue index.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void copyReturned(Long bookId) {
+        if (queueIndex.waitingCount(bookId) == 0
+                && !holdRepository.existsByBookIdAndStatus(bookId, HoldStatus.WAITING)) {
+            return;
+        }
+        if (bookRepository.takeCopy(bookId) != 1) {
+            return;
+        }
+        if (!assignTakenCopy(bookId)) {
+            bookRepository.returnCopy(bookId);
+        }
+    }
+
+    /**
+     * Checkout of a book the customer has a READY hold on: the set-aside copy is
+     * theirs and was already taken off the shelf. Returns false when there is none.
+     * The hold may have become READY on another instance, so the table is always asked.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean claimReadyCopy(Long customerId, Long bookId) {
+        return holdRepository.fulfill(bookId, customerId, HoldStatus.READY, HoldStatus.FULFILLED) == 1;
+    }
+
+    /* =======================
+       EXPIRY
+       ======================= */
+    @Scheduled(
+            initialDelayString = "${app.holds.expiry-check-ms:600000}",
+            fixedDelayString = "${app.holds.expiry-check-ms:600000}"
+    )
+    public void expireUncollected() {
+        List<BookHold> expired = holdRepository.findByStatusAndExpiresAtBefore(HoldStatus.READY, LocalDateTime.now());
+
+        for (BookHold hold : expired) {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (holdRepository.transition(hold.getId(), HoldStatus.READY, HoldStatus.EXPIRED) == 1) {
+                    releaseSetAsideCopy(hold.getBookId());
+                }
+            });
+        }
+        if (!expired.isEmpty()) {
+            log.info("Expired {} uncollected holds", expired.size());
+        }
+
+        assignShelvedCopies();
+    }
+
+    /*
+     * Safety net for a copy that reached the shelf while someone was waiting for it.
+     * Books with waiting holds and copies on the shelf hand them out here.
+     */
+    private void assignShelvedCopies() {
+        for (Long bookId : holdRepository.findWaitingBooksWithShelvedCopies(HoldStatus.WAITING)) {
+            transactionTemplate.executeWithoutResult(status -> {
+                while (bookRepository.takeCopy(bookId) == 1) {
+                    if (!assignTakenCopy(bookId)) {
+                        bookRepository.returnCopy(bookId);
+                        break;
+                    }
+                }
+            });
+        }
+    }
+
+    /* =======================
+       READ
+       ======================= */
+    public List<BookHold> getQueue(Long bookId) {
+        return holdRepository.findByBookIdAndStatusInOrderByIdAsc(bookId, ACTIVE);
+    }
+
+    public List<BookHold> getCustomerHolds(Long customerId) {
+        return holdRepository.findByCustomerIdOrderByIdDesc(customerId);
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+
+    // a copy set aside for a hold that ended: next holder, or back on the shelf
+    private void releaseSetAsideCopy(Long bookId) {
+        if (!assignTakenCopy(bookId)) {
+            bookRepository.returnCopy(bookId);
+        }
+    }
+
+    // gives a copy already taken off the shelf to the oldest waiting hold still active
+    private boolean assignTakenCopy(Long bookId) {
+        HoldQueueIndex.PendingHold next;
+        while ((next = queueIndex.poll(bookId)) != null) {
+            HoldQueueIndex.PendingHold hold = next;
+            if (markReady(bookId, hold)) {
+                TransactionHooks.onRollback(() -> queueIndex.restore(bookId, hold));
+                return true;
+            }
+            // cancelled in the meantime; it is simply dropped from the queue
+        }
+
+        // holds placed through another instance are only in the table
+        BookHold oldest;
+        while ((oldest = holdRepository.findFirstByBookIdAndStatusOrderByIdAsc(bookId, HoldStatus.WAITING)) != null) {
+            HoldQueueIndex.PendingHold hold = new HoldQueueIndex.PendingHold(oldest.getId(), oldest.getCustomerId());
+            if (markReady(bookId, hold)) {
+                TransactionHooks.afterCommit(() -> queueIndex.remove(bookId, hold.holdId()));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean markReady(Long bookId, HoldQueueIndex.PendingHold hold) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plus(pickupWindow);
+
+        if (holdRepository.markReady(hold.holdId(), now, expiresAt, HoldStatus.WAITING, HoldStatus.READY) != 1) {
+            return false;
+        }
+        outbox.record(CirculationOutbox.EventType.HOLD_READY, null, hold.customerId(), bookId,
+                Map.of("holdId", hold.holdId(), "expiresAt", expiresAt.toString()));
+        return true;
+    }
+}
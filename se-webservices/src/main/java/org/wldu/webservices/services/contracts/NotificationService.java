@@ -1,41 +1,322 @@
 package org.wldu.webservices.services.contracts;
 
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.wldu.webservices.dto.BroadcastRequest;
+import org.wldu.webservices.dto.MarkReadRequest;
+import org.wldu.webservices.dto.MarkReadResult;
+import org.wldu.webservices.dto.NotificationView;
 import org.wldu.webservices.entities.Notification;
 import org.wldu.webservices.entities.NotificationRole;
+import org.wldu.webservices.exception.BadRequestException;
+import org.wldu.webservices.exception.ResourceNotFoundException;
+import org.wldu.webservices.pagination.KeysetPage;
+import org.wldu.webservices.pagination.SeekCursor;
 import org.wldu.webservices.repositories.NotificationRepository;
+import org.wldu.webservices.transaction.TransactionHooks;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 
 public class NotificationService {
 
+    public static final String ROLE_TOPIC_PREFIX = "/topic/notifications/role/";
+
+    private static final int MAX_INBOX_PAGE = 100;
+    private static final int MAX_MARK_READ_IDS = 500;
+    private static final String INBOX_SORT = "createdAt";
+
+    // the customer's own notifications plus the customer broadcasts, with their read state
+    private static final String CUSTOMER_NOTIFICATIONS_SQL = """
+            SELECT n.id, n.title, n.message, n.receiver_role, n.receiver_customer_id,
+                   CASE WHEN n.receiver_customer_id IS NULL THEN r.notification_id IS NOT NULL
+                        ELSE n.read END AS read,
+                   n.created_at
+            FROM notifications n
+            LEFT JOIN notification_receipts r
+                   ON r.notification_id = n.id AND r.recipient_id = ?
+            WHERE n.receiver_customer_id = ?
+               OR (n.receiver_customer_id IS NULL AND n.receiver_role = 'CUSTOMER')
+            ORDER BY n.id DESC
+            """;
+
+    // one page of the same list, newest first: each source is read from its own index
+    // range, only as far as one page reaches, then the two are merged
+    private static final String INBOX_SQL = """
+            SELECT n.id, n.title, n.message, n.receiver_role, n.receiver_customer_id,
+                   CASE WHEN n.receiver_customer_id IS NULL THEN r.notification_id IS NOT NULL
+                        ELSE n.read END AS read,
+                   n.created_at
+            FROM (
+                (SELECT id, title, message, receiver_role, receiver_customer_id, read, created_at
+                 FROM notifications
+                 WHERE receiver_customer_id = ? %1$s
+                 ORDER BY created_at DESC, id DESC
+                 LIMIT ?)
+                UNION ALL
+                (SELECT id, title, message, receiver_role, receiver_customer_id, read, created_at
+                 FROM notifications
+                 WHERE receiver_customer_id IS NULL AND receiver_role = 'CUSTOMER' %1$s
+                 ORDER BY created_at DESC, id DESC
+                 LIMIT ?)
+            ) n
+            LEFT JOIN notification_receipts r
+                   ON r.notification_id = n.id AND r.recipient_id = ?
+            ORDER BY n.created_at DESC, n.id DESC
+            LIMIT ?
+            """;
+
+    private static final String INBOX_FIRST_SQL = INBOX_SQL.formatted("");
+    private static final String INBOX_AFTER_SQL = INBOX_SQL.formatted("AND (created_at, id) < (?, ?)");
+
+    // the customer's own notifications in one UPDATE, the customer broadcasts as receipts,
+    // in one statement; returns how many of each changed
+    private static final String MARK_READ_SQL = """
+            WITH own AS (
+                UPDATE notifications
+                SET read = true
+                WHERE receiver_customer_id = ? AND read = false AND %1$s
+                RETURNING id
+            ), receipts AS (
+                INSERT INTO notification_receipts (notification_id, recipient_id, read_at)
+                SELECT id, ?, ? FROM notifications
+                WHERE receiver_customer_id IS NULL AND receiver_role = 'CUSTOMER' AND %1$s
+                ON CONFLICT (notification_id, recipient_id) DO NOTHING
+                RETURNING notification_id
+            )
+            SELECT (SELECT count(*) FROM own), (SELECT count(*) FROM receipts)
+            """;
+
+    private static final String MARK_READ_IDS_SQL = MARK_READ_SQL.formatted("id = ANY (?)");
+    private static final String MARK_READ_UP_TO_SQL = MARK_READ_SQL.formatted("id <= ?");
+
+    private static final String TARGET_SQL = """
+            SELECT receiver_customer_id, receiver_role FROM notifications WHERE id = ?
+            """;
+
+    private static final String INSERT_RECEIPT_SQL = """
+            INSERT INTO notification_receipts (notification_id, recipient_id, read_at)
+            VALUES (?, ?, ?)
+            ON CONFLICT (notification_id, recipient_id) DO NOTHING
+            """;
+
     private final NotificationRepository notificationRepository;
     private final SimpMessagingTemplate messagingTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final UnreadNotificationCounter unreadCounter;
 
     public NotificationService(NotificationRepository notificationRepository,
-                               SimpMessagingTemplate messagingTemplate) {
+                               SimpMessagingTemplate messagingTemplate,
+                               JdbcTemplate jdbcTemplate,
+                               UnreadNotificationCounter unreadCounter) {
         this.notificationRepository = notificationRepository;
         this.messagingTemplate = messagingTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.unreadCounter = unreadCounter;
     }
 
     public Notification notifyCustomer(Long customerId, String title, String message) {
         Notification notification = new Notification(title, message, NotificationRole.CUSTOMER, customerId);
         Notification saved = notificationRepository.save(notification);
         messagingTemplate.convertAndSend("/topic/notifications/" + customerId, saved);
+        unreadCounter.notified(customerId, 1);
+        return saved;
+    }
+
+    // many customer notifications in one transaction; each is pushed once that has committed
+    @Transactional
+    public List<Notification> notifyCustomers(List<Notification> notifications) {
+        List<Notification> saved = notificationRepository.saveAll(notifications);
+        TransactionHooks.afterCommit(() -> {
+            for (Notification notification : saved) {
+                messagingTemplate.convertAndSend(
+                        "/topic/notifications/" + notification.getReceiverCustomerId(), notification);
+            }
+            saved.stream()
+                    .collect(Collectors.groupingBy(Notification::getReceiverCustomerId, Collectors.counting()))
+                    .forEach(unreadCounter::notified);
+        });
+        return saved;
+    }
+
+    /**
+     * One notification for everyone with the role: a single row and a single
+     * message on the role topic, whatever the size of the audience. Recipients'
+     * read state is only written when they read it.
+     */
+    @Transactional
+    public Notification broadcast(BroadcastRequest request) {
+        if (request.role() == null) {
+            throw new BadRequestException("role is required");
+        }
+        if (request.title() == null || request.title().isBlank()) {
+            throw new BadRequestException("title is required");
+        }
+
+        Notification saved = notificationRepository.save(
+                new Notification(request.title(), request.message(), request.role(), null));
+        TransactionHooks.afterCommit(() -> {
+            if (request.role() == NotificationRole.CUSTOMER) {
+                unreadCounter.customerBroadcast();
+            }
+            messagingTemplate.convertAndSend(roleTopic(request.role()), saved);
+        });
         return saved;
     }
 
-    public List<Notification> getCustomerNotifications(Long userId) {
-        return notificationRepository.findByReceiverCustomerId(userId);
+    /* =======================
+       READ
+       ======================= */
+    public List<NotificationView> getCustomerNotifications(Long customerId) {
+        return jdbcTemplate.query(CUSTOMER_NOTIFICATIONS_SQL, NotificationService::toView, customerId, customerId);
+    }
+
+    /**
+     * One page of the customer's inbox, newest first. Pass the previous page's
+     * nextCursor to continue; every page costs the same, however far back it is.
+     */
+    public KeysetPage<NotificationView> getInbox(Long customerId, String cursor, int size) {
+
+        if (size <= 0 || size > MAX_INBOX_PAGE) {
+            throw new BadRequestException("Size must be between 1 and " + MAX_INBOX_PAGE);
+        }
+
+        // one row more than the page tells whether there is a next one
+        int limit = size + 1;
+        List<NotificationView> rows;
+
+        if (cursor == null || cursor.isEmpty()) {
+            rows = jdbcTemplate.query(INBOX_FIRST_SQL, NotificationService::toView,
+                    customerId, limit, limit, customerId, limit);
+        } else {
+            SeekCursor after = SeekCursor.decode(cursor);
+            if (!INBOX_SORT.equals(after.sortBy()) || after.ascending() || after.lastValue() == null) {
+                throw new BadRequestException("Cursor does not match the inbox");
+            }
+            Timestamp createdAt;
+            try {
+                createdAt = Timestamp.valueOf(LocalDateTime.parse(after.lastValue()));
+            } catch (DateTimeParseException ex) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            rows = jdbcTemplate.query(INBOX_AFTER_SQL, NotificationService::toView,
+                    customerId, createdAt, after.lastId(), limit,
+                    createdAt, after.lastId(), limit,
+                    customerId, limit);
+        }
+
+        boolean hasMore = rows.size() > size;
+        List<NotificationView> content = hasMore ? rows.subList(0, size) : rows;
+
+        String nextCursor = null;
+        if (hasMore) {
+            NotificationView last = content.get(content.size() - 1);
+            nextCursor = new SeekCursor(INBOX_SORT, false, last.createdAt().toString(), last.id()).encode();
+        }
+
+        return new KeysetPage<>(List.copyOf(content), nextCursor, hasMore);
+    }
+
+    public long getUnreadCount(Long customerId) {
+        return unreadCounter.unread(customerId);
+    }
+
+    public List<Notification> getRoleBroadcasts(NotificationRole role) {
+        return notificationRepository.findByReceiverRoleAndReceiverCustomerIdIsNullOrderByIdDesc(role);
+    }
+
+    /* =======================
+       MARK READ
+       ======================= */
+
+    /**
+     * Marks a notification read. A broadcast is marked read for the given
+     * recipient only (customer id, or user id for staff broadcasts).
+     */
+    @Transactional
+    public void markAsRead(Long id, Long recipientId) {
+        List<Map<String, Object>> target = jdbcTemplate.queryForList(TARGET_SQL, id);
+        if (target.isEmpty()) {
+            throw new ResourceNotFoundException("Notification not found");
+        }
+
+        Long ownerId = (Long) target.get(0).get("receiver_customer_id");
+        if (ownerId != null) {
+            markRead(ownerId, MARK_READ_IDS_SQL, new Long[]{id});
+            return;
+        }
+
+        if (recipientId == null) {
+            throw new BadRequestException("recipientId is required to mark a broadcast as read");
+        }
+        if (NotificationRole.CUSTOMER.name().equals(target.get(0).get("receiver_role"))) {
+            markRead(recipientId, MARK_READ_IDS_SQL, new Long[]{id});
+        } else {
+            jdbcTemplate.update(INSERT_RECEIPT_SQL, id, recipientId, Timestamp.valueOf(LocalDateTime.now()));
+        }
+    }
+
+    /**
+     * Marks the listed notifications of the customer read, or all of them up to
+     * upToId, own notifications and customer broadcasts alike, in one statement
+     * (committed on its own, so the returned unread count already reflects it).
+     */
+    public MarkReadResult markAsRead(Long customerId, MarkReadRequest request) {
+
+        boolean byIds = request.ids() != null && !request.ids().isEmpty();
+        if (byIds == (request.upToId() != null)) {
+            throw new BadRequestException("Give either ids or upToId");
+        }
+        if (byIds && request.ids().size() > MAX_MARK_READ_IDS) {
+            throw new BadRequestException("At most " + MAX_MARK_READ_IDS + " ids per request");
+        }
+
+        long marked = byIds
+                ? markRead(customerId, MARK_READ_IDS_SQL, request.ids().toArray(Long[]::new))
+                : markRead(customerId, MARK_READ_UP_TO_SQL, request.upToId());
+
+        return new MarkReadResult(marked, unreadCounter.unread(customerId));
+    }
+
+    public static String roleTopic(NotificationRole role) {
+        return ROLE_TOPIC_PREFIX + role.name().toLowerCase(Locale.ROOT);
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+
+    private long markRead(Long customerId, String sql, Object selection) {
+        long[] changed = jdbcTemplate.queryForObject(sql,
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)},
+                customerId, selection, customerId, Timestamp.valueOf(LocalDateTime.now()), selection);
+
+        TransactionHooks.afterCommit(() -> unreadCounter.read(customerId, changed[0], changed[1]));
+        return changed[0] + changed[1];
     }
 
-    public void markAsRead(Long id) {
-        Notification notification = notificationRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Notification not found"));
-        notification.setRead(true);
-        notificationRepository.save(notification);
+    private static NotificationView toView(ResultSet rs, int rowNum) throws SQLException {
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        String role = rs.getString("receiver_role");
+        return new NotificationView(
+                rs.getLong("id"),
+                rs.getString("title"),
+                rs.getString("message"),
+                role == null ? null : NotificationRole.valueOf(role),
+                rs.getObject("receiver_customer_id", Long.class),
+                rs.getBoolean("read"),
+                createdAt == null ? null : createdAt.toLocalDateTime()
+        );
     }
 }
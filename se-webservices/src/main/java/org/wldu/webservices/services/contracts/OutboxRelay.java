@@ -0,0 +1,346 @@
+package org.wldu.webservices.services.contracts;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.wldu.webservices.dto.CirculationEvent;
+import org.wldu.webservices.entities.Notification;
+import org.wldu.webservices.entities.NotificationRole;
+import org.wldu.webservices.services.contracts.CirculationOutbox.EventType;
+import org.wldu.webservices.transaction.TransactionHooks;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains outbox_events in id order, one batch per transaction.
+ * The customer notifications of a batch are stored in the same transaction that
+ * marks the batch published, so an event is either fully relayed or picked up
+ * again (at-least-once). Dashboard counters and the websocket pushes follow the
+ * commit; the counters are reconciled anyway and pushes are best effort.
+ * Rows are claimed with SKIP LOCKED, so several instances can relay side by side.
+ * An event that failed max-attempts times is given up on: it stays in the table,
+ * is logged and counted (outbox.events.dead) and is never purged.
+ */
+@Service
+public class OutboxRelay {
+
+    public static final String TOPIC = "/topic/circulation";
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final TypeReference<Map<String, Object>> DETAILS = new TypeReference<>() {
+    };
+
+    private static final String CLAIM_BATCH_SQL = """
+            SELECT id, event_type, borrow_id, customer_id, book_id, payload, created_at
+            FROM outbox_events
+            WHERE published_at IS NULL AND attempts < ?
+            ORDER BY id
+            LIMIT ?
+            FOR UPDATE SKIP LOCKED
+            """;
+
+    private static final String PENDING_IDS_SQL = """
+            SELECT id FROM outbox_events
+            WHERE published_at IS NULL AND attempts < ?
+            ORDER BY id
+            LIMIT ?
+            """;
+
+    private static final String CLAIM_ONE_SQL = """
+            SELECT id, event_type, borrow_id, customer_id, book_id, payload, created_at
+            FROM outbox_events
+            WHERE id = ? AND published_at IS NULL
+            FOR UPDATE SKIP LOCKED
+            """;
+
+    private static final String BOOK_TITLES_SQL = "SELECT id, title FROM books WHERE id = ANY (?)";
+
+    private static final String MARK_PUBLISHED_SQL = "UPDATE outbox_events SET published_at = ? WHERE id = ANY (?)";
+
+    private static final String MARK_FAILED_SQL =
+            "UPDATE outbox_events SET attempts = attempts + 1 WHERE id = ? RETURNING attempts";
+
+    // events the relay has given up on; kept until someone looks into them
+    private static final String DEAD_COUNT_SQL =
+            "SELECT count(*) FROM outbox_events WHERE published_at IS NULL AND attempts >= ?";
+
+    private static final String PURGE_SQL = "DELETE FROM outbox_events WHERE published_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final NotificationService notificationService;
+    private final DashboardStatsService dashboardStats;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retentionDays;
+
+    private final Counter relayed;
+    private final Counter failed;
+    private final Counter dead;
+    private final AtomicLong waitingDead = new AtomicLong();
+
+    private record StoredEvent(long id, EventType type, Long borrowId, Long customerId, Long bookId,
+                               Map<String, Object> details, LocalDateTime createdAt) {
+    }
+
+    public OutboxRelay(JdbcTemplate jdbcTemplate,
+                       TransactionTemplate transactionTemplate,
+                       NotificationService notificationService,
+                       DashboardStatsService dashboardStats,
+                       SimpMessagingTemplate messagingTemplate,
+                       ObjectMapper objectMapper,
+                       MeterRegistry meterRegistry,
+                       @Value("${app.outbox.batch-size:200}") int batchSize,
+                       @Value("${app.outbox.max-attempts:10}") int maxAttempts,
+                       @Value("${app.outbox.retention-days:7}") long retentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.notificationService = notificationService;
+        this.dashboardStats = dashboardStats;
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retentionDays = retentionDays;
+
+        this.relayed = Counter.builder("outbox.events.relayed")
+                .description("Circulation events relayed from the outbox")
+                .register(meterRegistry);
+        this.failed = Counter.builder("outbox.events.failed")
+                .description("Circulation event relays that failed and will be retried")
+                .register(meterRegistry);
+        this.dead = Counter.builder("outbox.events.dead")
+                .description("Circulation events given up on after max-attempts failed relays")
+                .register(meterRegistry);
+        Gauge.builder("outbox.events.dead.waiting", waitingDead, AtomicLong::get)
+                .description("Given-up circulation events still in outbox_events (recounted by the purge job)")
+                .register(meterRegistry);
+    }
+
+    /* =======================
+       RELAY
+       ======================= */
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:250}")
+    public void poll() {
+        try {
+            // a full batch means there is probably more waiting
+            int drained;
+            do {
+                drained = drainBatch();
+            } while (drained == batchSize);
+        } catch (RuntimeException ex) {
+            log.warn("Outbox relay failed, retrying events one by one", ex);
+            retryIndividually();
+        }
+    }
+
+    private int drainBatch() {
+        Integer count = transactionTemplate.execute(status -> {
+            List<StoredEvent> events = jdbcTemplate.query(CLAIM_BATCH_SQL, this::mapEvent, maxAttempts, batchSize);
+            relay(events);
+            return events.size();
+        });
+        return count == null ? 0 : count;
+    }
+
+    /*
+     * A batch failed as a whole: relay its events separately so one bad event
+     * does not hold back the others. Each failure only costs that event an attempt.
+     */
+    private void retryIndividually() {
+        List<Long> ids = jdbcTemplate.queryForList(PENDING_IDS_SQL, Long.class, maxAttempts, batchSize);
+
+        for (Long id : ids) {
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        relay(jdbcTemplate.query(CLAIM_ONE_SQL, this::mapEvent, id)));
+            } catch (RuntimeException ex) {
+                failed.increment();
+                Integer attempts = jdbcTemplate.queryForObject(MARK_FAILED_SQL, Integer.class, id);
+                if (attempts != null && attempts >= maxAttempts) {
+                    dead.increment();
+                    waitingDead.incrementAndGet();
+                    log.error("Giving up on outbox event {} after {} attempts; it stays in outbox_events", id,
+                            attempts, ex);
+                } else {
+                    log.warn("Could not relay outbox event {}", id, ex);
+                }
+            }
+        }
+    }
+
+    private void relay(List<StoredEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        Map<Long, String> titles = bookTitles(events);
+
+        List<Notification> notifications = new ArrayList<>();
+        long borrowed = 0;
+        long returned = 0;
+        long undone = 0;
+        for (StoredEvent event : events) {
+            switch (event.type()) {
+                case BORROWED -> borrowed++;
+                case RETURNED -> returned++;
+                case RETURN_UNDONE -> undone++;
+                default -> {
+                }
+            }
+            Notification notification = toNotification(event, titles.get(event.bookId()));
+            if (notification != null) {
+                notifications.add(notification);
+            }
+        }
+
+        if (!notifications.isEmpty()) {
+            notificationService.notifyCustomers(notifications);
+        }
+        dashboardStats.booksBorrowed(borrowed);
+        dashboardStats.booksReturned(returned);
+        dashboardStats.returnsUndone(undone);
+
+        jdbcTemplate.update(MARK_PUBLISHED_SQL, Timestamp.valueOf(LocalDateTime.now()),
+                events.stream().map(StoredEvent::id).toArray(Long[]::new));
+
+        TransactionHooks.afterCommit(() -> {
+            relayed.increment(events.size());
+            for (StoredEvent event : events) {
+                publish(event, titles.get(event.bookId()));
+            }
+        });
+    }
+
+    /* =======================
+       PURGE
+       ======================= */
+    @Scheduled(cron = "${app.outbox.purge-cron:0 45 3 * * *}")
+    public void purgePublished() {
+        int deleted = jdbcTemplate.update(PURGE_SQL,
+                Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays)));
+        if (deleted > 0) {
+            log.info("Purged {} relayed outbox events", deleted);
+        }
+
+        // never purged: they are the only record of what the customers were not told
+        Long deadEvents = jdbcTemplate.queryForObject(DEAD_COUNT_SQL, Long.class, maxAttempts);
+        waitingDead.set(deadEvents == null ? 0 : deadEvents);
+        if (waitingDead.get() > 0) {
+            log.warn("{} outbox events were given up on and are waiting for a look", waitingDead.get());
+        }
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+
+    // null when the event has nothing to tell the customer
+    private Notification toNotification(StoredEvent event, String bookTitle) {
+        if (event.customerId() == null) {
+            return null;
+        }
+
+        String title = "\"" + (bookTitle == null ? "your book" : bookTitle) + "\"";
+        Map<String, Object> details = event.details();
+
+        return switch (event.type()) {
+            case BORROWED -> customerNotification(event, "Book borrowed",
+                    "You borrowed " + title + ". Please return it by " + date(details.get("dueDate")) + ".");
+            case RETURNED -> {
+                double latePenalty = number(details.get("latePenalty"));
+                yield customerNotification(event, "Book returned", latePenalty > 0
+                        ? "You returned " + title + " late. A late fee of " + latePenalty + " was charged."
+                        : "You returned " + title + ". Thank you!");
+            }
+            case PENALTY_UPDATED -> customerNotification(event, "Penalty updated",
+                    "The amount due for " + title + " is now " + number(details.get("amountDue")) + ".");
+            case HOLD_READY -> customerNotification(event, "Hold ready",
+                    "A copy of " + title + " is waiting for you until " + date(details.get("expiresAt")));
+            case RETURN_UNDONE -> null;
+        };
+    }
+
+    private static Notification customerNotification(StoredEvent event, String title, String message) {
+        return new Notification(title, message, NotificationRole.CUSTOMER, event.customerId());
+    }
+
+    private void publish(StoredEvent event, String bookTitle) {
+        try {
+            messagingTemplate.convertAndSend(TOPIC, new CirculationEvent(event.id(), event.type().name(),
+                    event.borrowId(), event.customerId(), event.bookId(), bookTitle,
+                    event.details(), event.createdAt()));
+        } catch (RuntimeException ex) {
+            // the event is already relayed; a missed push only delays open screens
+            log.warn("Could not push circulation event {}", event.id(), ex);
+        }
+    }
+
+    private Map<Long, String> bookTitles(List<StoredEvent> events) {
+        Long[] bookIds = events.stream()
+                .map(StoredEvent::bookId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toArray(Long[]::new);
+
+        Map<Long, String> titles = new HashMap<>();
+        if (bookIds.length > 0) {
+            jdbcTemplate.query(BOOK_TITLES_SQL,
+                    (RowCallbackHandler) rs -> titles.put(rs.getLong("id"), rs.getString("title")),
+                    (Object) bookIds);
+        }
+        return titles;
+    }
+
+    private StoredEvent mapEvent(ResultSet rs, int rowNum) throws SQLException {
+        Map<String, Object> details;
+        try {
+            details = objectMapper.readValue(rs.getString("payload"), DETAILS);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unreadable payload of outbox event " + rs.getLong("id"), ex);
+        }
+        return new StoredEvent(
+                rs.getLong("id"),
+                EventType.valueOf(rs.getString("event_type")),
+                rs.getObject("borrow_id", Long.class),
+                rs.getObject("customer_id", Long.class),
+                rs.getObject("book_id", Long.class),
+                details,
+                rs.getTimestamp("created_at").toLocalDateTime()
+        );
+    }
+
+    private static String date(Object isoDateTime) {
+        return isoDateTime == null ? "-" : LocalDateTime.parse(isoDateTime.toString()).format(DATE_FORMAT);
+    }
+
+    private static double number(Object value) {
+        return value instanceof Number n ? n.doubleValue() : 0;
+    }
+}
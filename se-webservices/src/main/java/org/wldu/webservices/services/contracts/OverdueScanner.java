@@ -0,0 +1,273 @@
+package org.wldu.webservices.services.contracts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.wldu.webservices.dto.OverdueScanReport;
+import org.wldu.webservices.entities.JobCheckpoint;
+import org.wldu.webservices.entities.Notification;
+import org.wldu.webservices.entities.NotificationRole;
+import org.wldu.webservices.repositories.JobCheckpointRepository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Nightly late-fee job.
+ * Walks the open, overdue loans in id order, one batch per transaction, and
+ * sets their late penalty with a single UPDATE per batch; the checkpoint row is
+ * advanced in the same transaction, so a crashed run resumes where it stopped.
+ * Only the ids of one batch are ever held in memory, and row locks last for one
+ * batch only, so checkouts and returns are not blocked behind the scan.
+ */
+@Service
+public class OverdueScanner {
+
+    public static final String JOB_NAME = "overdue-scan";
+
+    private static final Logger log = LoggerFactory.getLogger(OverdueScanner.class);
+
+    // id range (and size) of the next batch of open overdue loans
+    private static final String NEXT_BATCH_SQL = """
+            SELECT max(id), count(*) FROM (
+                SELECT id FROM borrow_books
+                WHERE returned = false AND return_date < ? AND id > ?
+                ORDER BY id
+                LIMIT ?
+            ) batch
+            """;
+
+    // whole days overdue times the daily fee; rows already at that fee are not rewritten, and
+    // fees set by hand (waived or reduced) are never overwritten.
+    // returned is re-checked on the target row, so a loan returned meanwhile is skipped.
+    private static final String APPLY_PENALTIES_SQL = """
+            WITH due AS (
+                SELECT bb.id, bb.customer_id, b.title, bb.late_penalty AS previous_late_penalty,
+                       CAST(? AS date) - CAST(bb.return_date AS date) AS days
+                FROM borrow_books bb
+                JOIN books b ON b.id = bb.book_id
+                WHERE bb.id > ? AND bb.id <= ?
+                  AND bb.returned = false
+                  AND bb.return_date < ?
+            )
+            UPDATE borrow_books bb
+            SET late_penalty = due.days * ?,
+                version      = COALESCE(bb.version, 0) + 1
+            FROM due
+            WHERE bb.id = due.id
+              AND bb.returned = false
+              AND bb.late_penalty_manual = false
+              AND bb.late_penalty IS DISTINCT FROM due.days * ?
+            RETURNING due.customer_id, due.title, due.days, bb.late_penalty,
+                      due.previous_late_penalty, bb.broken_pages, bb.lost, bb.lost_price, bb.status
+            """;
+
+    private static final String ADVANCE_CHECKPOINT_SQL = """
+            UPDATE job_checkpoints
+            SET last_id = ?, processed = processed + ?, updated = updated + ?, updated_at = ?
+            WHERE job_name = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JobCheckpointRepository checkpointRepository;
+    private final NotificationService notificationService;
+    private final PenaltyBalanceService balances;
+    private final double feePerDay;
+    private final int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private record Reminder(Long customerId, String title, long days, double amount) {
+    }
+
+    private record BatchResult(long lastId, long scanned, List<Reminder> reminders) {
+    }
+
+    public OverdueScanner(JdbcTemplate jdbcTemplate,
+                          TransactionTemplate transactionTemplate,
+                          JobCheckpointRepository checkpointRepository,
+                          NotificationService notificationService,
+                          PenaltyBalanceService balances,
+                          @Value("${app.penalty.late-fee-per-day:5}") double feePerDay,
+                          @Value("${app.penalty.batch-size:1000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.checkpointRepository = checkpointRepository;
+        this.notificationService = notificationService;
+        this.balances = balances;
+        this.feePerDay = feePerDay;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(cron = "${app.penalty.overdue-cron:0 0 2 * * *}")
+    public void nightly() {
+        scan();
+    }
+
+    /**
+     * Runs (or resumes) today's scan. A scan already completed today is not repeated.
+     */
+    public OverdueScanReport scan() {
+        if (!running.compareAndSet(false, true)) {
+            return new OverdueScanReport("ALREADY_RUNNING", false, 0, 0, 0, 0, 0);
+        }
+        try {
+            return run();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /* =======================
+       RUN
+       ======================= */
+    private OverdueScanReport run() {
+        LocalDate today = LocalDate.now();
+        JobCheckpoint checkpoint = checkpointRepository.findById(JOB_NAME).orElse(null);
+
+        if (checkpoint != null && today.equals(checkpoint.getRunDate())
+                && JobCheckpoint.COMPLETED.equals(checkpoint.getStatus())) {
+            return new OverdueScanReport(JobCheckpoint.COMPLETED, false, 0, 0, 0, 0, 0);
+        }
+
+        boolean resumed = checkpoint != null && today.equals(checkpoint.getRunDate())
+                && JobCheckpoint.RUNNING.equals(checkpoint.getStatus());
+        if (!resumed) {
+            checkpoint = start(checkpoint, today);
+        } else {
+            log.info("Resuming overdue scan of {} after loan id {}", today, checkpoint.getLastId());
+        }
+
+        // a resumed run keeps the original cut-off so both halves charge the same day count
+        LocalDateTime asOf = checkpoint.getAsOf();
+        long lastId = checkpoint.getLastId();
+        long scanned = 0;
+        long updated = 0;
+        long reminders = 0;
+        long started = System.nanoTime();
+
+        while (true) {
+            BatchResult batch = nextBatch(lastId, asOf);
+            if (batch == null) {
+                break;
+            }
+            lastId = batch.lastId();
+            scanned += batch.scanned();
+            updated += batch.reminders().size();
+            reminders += remind(batch.reminders());
+        }
+
+        checkpoint = checkpointRepository.findById(JOB_NAME).orElse(checkpoint);
+        checkpoint.setStatus(JobCheckpoint.COMPLETED);
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        checkpointRepository.save(checkpoint);
+
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        double rowsPerSecond = elapsedMillis == 0 ? scanned : scanned * 1000.0 / elapsedMillis;
+        log.info("Overdue scan done: {} overdue loans scanned, {} penalties updated, {} reminders, {} ms ({} rows/s)",
+                scanned, updated, reminders, elapsedMillis, String.format("%.0f", rowsPerSecond));
+
+        return new OverdueScanReport(JobCheckpoint.COMPLETED, resumed, scanned, updated, reminders,
+                elapsedMillis, rowsPerSecond);
+    }
+
+    private JobCheckpoint start(JobCheckpoint checkpoint, LocalDate today) {
+        if (checkpoint == null) {
+            checkpoint = new JobCheckpoint();
+            checkpoint.setJobName(JOB_NAME);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        checkpoint.setRunDate(today);
+        checkpoint.setAsOf(now);
+        checkpoint.setLastId(0L);
+        checkpoint.setProcessed(0);
+        checkpoint.setUpdated(0);
+        checkpoint.setStatus(JobCheckpoint.RUNNING);
+        checkpoint.setStartedAt(now);
+        checkpoint.setUpdatedAt(now);
+        return checkpointRepository.save(checkpoint);
+    }
+
+    /* =======================
+       BATCH
+       ======================= */
+
+    // one transaction: find the batch, charge it, move the checkpoint past it
+    private BatchResult nextBatch(long lastId, LocalDateTime asOf) {
+        Timestamp cutoff = Timestamp.valueOf(asOf);
+
+        return transactionTemplate.execute(status -> {
+            long[] range = jdbcTemplate.queryForObject(NEXT_BATCH_SQL,
+                    (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)},
+                    cutoff, lastId, batchSize);
+            if (range == null || range[1] == 0) {
+                return null;
+            }
+            long batchEnd = range[0];
+            long scanned = range[1];
+
+            PenaltyBalanceService.BalanceChanges charges = new PenaltyBalanceService.BalanceChanges();
+            List<Reminder> reminders = jdbcTemplate.query(APPLY_PENALTIES_SQL,
+                    (rs, rowNum) -> {
+                        Reminder reminder = new Reminder(
+                                rs.getLong(1),
+                                rs.getString(2),
+                                rs.getLong(3),
+                                rs.getDouble(4));
+
+                        Boolean resolved = rs.getObject(9, Boolean.class);
+                        Integer brokenPages = rs.getObject(6, Integer.class);
+                        Boolean lost = rs.getObject(7, Boolean.class);
+                        Double lostPrice = rs.getObject(8, Double.class);
+                        charges.add(reminder.customerId(),
+                                balances.amountDue(resolved, rs.getObject(5, Double.class),
+                                        brokenPages, lost, lostPrice),
+                                balances.amountDue(resolved, reminder.amount(),
+                                        brokenPages, lost, lostPrice));
+                        return reminder;
+                    },
+                    cutoff, lastId, batchEnd, cutoff, feePerDay, feePerDay);
+
+            // the customers' balances move in the same transaction as their loans
+            balances.apply(charges);
+
+            jdbcTemplate.update(ADVANCE_CHECKPOINT_SQL,
+                    batchEnd, scanned, reminders.size(), Timestamp.valueOf(LocalDateTime.now()), JOB_NAME);
+
+            return new BatchResult(batchEnd, scanned, reminders);
+        });
+    }
+
+    // reminders go out after the batch committed; a lost reminder never undoes a fee
+    private int remind(List<Reminder> reminders) {
+        if (reminders.isEmpty()) {
+            return 0;
+        }
+
+        List<Notification> notifications = new ArrayList<>(reminders.size());
+        for (Reminder reminder : reminders) {
+            notifications.add(new Notification(
+                    "Overdue book",
+                    String.format("\"%s\" is %d day(s) overdue. Late fee so far: %.2f",
+                            reminder.title(), reminder.days(), reminder.amount()),
+                    NotificationRole.CUSTOMER,
+                    reminder.customerId()));
+        }
+
+        try {
+            return notificationService.notifyCustomers(notifications).size();
+        } catch (RuntimeException ex) {
+            log.warn("Could not send {} overdue reminders", notifications.size(), ex);
+            return 0;
+        }
+    }
+}
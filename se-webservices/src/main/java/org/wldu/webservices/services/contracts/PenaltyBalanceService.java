@@ -0,0 +1,278 @@
+package org.wldu.webservices.services.contracts;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.wldu.webservices.dto.CustomerBalanceView;
+import org.wldu.webservices.dto.DebtorRow;
+import org.wldu.webservices.entities.BorrowBook;
+import org.wldu.webservices.exception.BadRequestException;
+import org.wldu.webservices.exception.ResourceNotFoundException;
+import org.wldu.webservices.repositories.CustomerRepository;
+import org.wldu.webservices.transaction.TransactionHooks;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-customer fine balances kept in customer_balances.
+ * Every change to a loan's charges adds its difference to the customer's row in
+ * the same transaction, so reading a balance is one primary-key lookup (usually
+ * served from memory) instead of a sum over the whole loan history.
+ * A loan owes late penalty + broken pages x fee + lost price (if lost) until its
+ * status is set to resolved.
+ */
+@Service
+public class PenaltyBalanceService {
+
+    private static final Logger log = LoggerFactory.getLogger(PenaltyBalanceService.class);
+
+    private static final int MAX_DEBTORS = 100;
+
+    // balance deltas: concurrent changes for one customer serialize on its row
+    private static final String APPLY_DELTA_SQL = """
+            INSERT INTO customer_balances (customer_id, outstanding, open_items, updated_at)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (customer_id) DO UPDATE
+            SET outstanding = customer_balances.outstanding + EXCLUDED.outstanding,
+                open_items  = customer_balances.open_items + EXCLUDED.open_items,
+                updated_at  = EXCLUDED.updated_at
+            """;
+
+    private static final String BALANCE_SQL = """
+            SELECT outstanding, open_items, updated_at FROM customer_balances WHERE customer_id = ?
+            """;
+
+    // served by the partial index on outstanding
+    private static final String TOP_DEBTORS_SQL = """
+            SELECT cb.customer_id, c.name, c.email, cb.outstanding, cb.open_items
+            FROM customer_balances cb
+            JOIN customers c ON c.id = cb.customer_id
+            WHERE cb.outstanding > 0
+            ORDER BY cb.outstanding DESC, cb.customer_id
+            LIMIT ?
+            """;
+
+    // the ledger recomputed from the loans; rows that drifted are corrected
+    private static final String RECONCILE_SQL = """
+            WITH due AS (
+                SELECT customer_id,
+                       SUM(amount) AS outstanding,
+                       COUNT(*) FILTER (WHERE amount > 0) AS open_items
+                FROM (
+                    SELECT customer_id,
+                           COALESCE(late_penalty, 0)
+                             + COALESCE(broken_pages, 0) * ?
+                             + CASE WHEN lost THEN COALESCE(lost_price, 0) ELSE 0 END AS amount
+                    FROM borrow_books
+                    WHERE customer_id IS NOT NULL AND COALESCE(status, false) = false
+                ) loans
+                GROUP BY customer_id
+            ), actual AS (
+                SELECT c.id AS customer_id,
+                       COALESCE(d.outstanding, 0) AS outstanding,
+                       COALESCE(d.open_items, 0) AS open_items
+                FROM customers c
+                LEFT JOIN due d ON d.customer_id = c.id
+            )
+            INSERT INTO customer_balances (customer_id, outstanding, open_items, updated_at)
+            SELECT customer_id, outstanding, open_items, ? FROM actual
+            ON CONFLICT (customer_id) DO UPDATE
+            SET outstanding = EXCLUDED.outstanding,
+                open_items  = EXCLUDED.open_items,
+                updated_at  = EXCLUDED.updated_at
+            WHERE customer_balances.outstanding <> EXCLUDED.outstanding
+               OR customer_balances.open_items <> EXCLUDED.open_items
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomerRepository customerRepository;
+    private final double lateFeePerDay;
+    private final BigDecimal brokenPageFee;
+
+    private final Cache<Long, CustomerBalanceView> balances;
+
+    /**
+     * Balance changes collected over a unit of work and written with one batch.
+     */
+    public static final class BalanceChanges {
+
+        private final Map<Long, BigDecimal> amounts = new HashMap<>();
+        private final Map<Long, Integer> items = new HashMap<>();
+
+        public void add(Long customerId, BigDecimal before, BigDecimal after) {
+            if (customerId == null || before.compareTo(after) == 0) {
+                return;
+            }
+            amounts.merge(customerId, after.subtract(before), BigDecimal::add);
+            int itemDelta = (after.signum() > 0 ? 1 : 0) - (before.signum() > 0 ? 1 : 0);
+            items.merge(customerId, itemDelta, Integer::sum);
+        }
+
+        public boolean isEmpty() {
+            return amounts.isEmpty();
+        }
+    }
+
+    public PenaltyBalanceService(JdbcTemplate jdbcTemplate,
+                                 CustomerRepository customerRepository,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.penalty.late-fee-per-day:5}") double lateFeePerDay,
+                                 @Value("${app.penalty.broken-page-fee:2}") BigDecimal brokenPageFee,
+                                 @Value("${app.balances.cache-size:10000}") long cacheSize,
+                                 @Value("${app.balances.cache-ttl-seconds:600}") long cacheTtlSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.customerRepository = customerRepository;
+        this.lateFeePerDay = lateFeePerDay;
+        this.brokenPageFee = brokenPageFee;
+        this.balances = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, balances, "customer.balances");
+    }
+
+    /* =======================
+       CHARGES
+       ======================= */
+    public BigDecimal amountDue(BorrowBook loan) {
+        return amountDue(loan.getStatus(), loan.getLatePenalty(), loan.getBrokenPages(),
+                loan.getLost(), loan.getLostPrice());
+    }
+
+    public BigDecimal amountDue(Boolean resolved, Double latePenalty, Integer brokenPages,
+                                Boolean lost, Double lostPrice) {
+        if (Boolean.TRUE.equals(resolved)) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal amount = money(latePenalty)
+                .add(brokenPageFee.multiply(BigDecimal.valueOf(brokenPages == null ? 0 : brokenPages)));
+        if (Boolean.TRUE.equals(lost)) {
+            amount = amount.add(money(lostPrice));
+        }
+        return amount.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    // same rule as the overdue scan: whole days past the due date times the daily fee
+    public double lateFee(LocalDateTime dueDate, LocalDateTime at) {
+        if (dueDate == null || !dueDate.isBefore(at)) {
+            return 0;
+        }
+        return ChronoUnit.DAYS.between(dueDate.toLocalDate(), at.toLocalDate()) * lateFeePerDay;
+    }
+
+    public double getLateFeePerDay() {
+        return lateFeePerDay;
+    }
+
+    /* =======================
+       LEDGER
+       ======================= */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordChange(Long customerId, BigDecimal before, BigDecimal after) {
+        BalanceChanges changes = new BalanceChanges();
+        changes.add(customerId, before, after);
+        apply(changes);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(BalanceChanges changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // customer id order, so two batches touching the same customers cannot deadlock
+        List<Long> customerIds = new ArrayList<>(changes.amounts.keySet());
+        customerIds.sort(null);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        jdbcTemplate.batchUpdate(APPLY_DELTA_SQL, customerIds, customerIds.size(), (ps, customerId) -> {
+            ps.setLong(1, customerId);
+            ps.setBigDecimal(2, changes.amounts.get(customerId));
+            ps.setInt(3, changes.items.get(customerId));
+            ps.setTimestamp(4, now);
+        });
+
+        TransactionHooks.afterCommit(() -> balances.invalidateAll(customerIds));
+    }
+
+    // like the dashboard counters: a loan changed while this runs is set right by the next run
+    @Scheduled(cron = "${app.balances.reconcile-cron:0 30 4 * * *}")
+    public void reconcile() {
+        int corrected = jdbcTemplate.update(RECONCILE_SQL, brokenPageFee, Timestamp.valueOf(LocalDateTime.now()));
+        if (corrected > 0) {
+            balances.invalidateAll();
+            log.info("Customer balances reconciled, {} rows corrected", corrected);
+        }
+    }
+
+    /* =======================
+       READ
+       ======================= */
+    public CustomerBalanceView getBalance(Long customerId) {
+        return balances.get(customerId, this::loadBalance);
+    }
+
+    public List<DebtorRow> topDebtors(int limit) {
+        if (limit <= 0 || limit > MAX_DEBTORS) {
+            throw new BadRequestException(
+                    "limit must be between 1 and " + MAX_DEBTORS
+            );
+        }
+        return jdbcTemplate.query(TOP_DEBTORS_SQL,
+                (rs, rowNum) -> new DebtorRow(
+                        rs.getLong(1),
+                        rs.getString(2),
+                        rs.getString(3),
+                        rs.getBigDecimal(4),
+                        rs.getInt(5)),
+                limit);
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private CustomerBalanceView loadBalance(Long customerId) {
+        List<CustomerBalanceView> rows = jdbcTemplate.query(BALANCE_SQL,
+                (rs, rowNum) -> new CustomerBalanceView(
+                        customerId,
+                        rs.getBigDecimal(1),
+                        rs.getInt(2),
+                        rs.getTimestamp(3).toLocalDateTime()),
+                customerId);
+        if (!rows.isEmpty()) {
+            return rows.get(0);
+        }
+
+        // no charge was ever recorded
+        if (!customerRepository.existsById(customerId)) {
+            throw new ResourceNotFoundException(
+                    "Customer not found with id: " + customerId
+            );
+        }
+        return new CustomerBalanceView(customerId, BigDecimal.ZERO.setScale(2), 0, null);
+    }
+
+    private static BigDecimal money(Double value) {
+        return value == null ? BigDecimal.ZERO : BigDecimal.valueOf(value);
+    }
+}
@@ -0,0 +1,150 @@
+package org.wldu.webservices.services.contracts;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.wldu.webservices.websocket.CoalescingMessagePublisher;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unread notification count per customer, answered from memory.
+ * The count is the customer's own unread notifications plus the customer
+ * broadcasts they have no receipt for. The number of broadcasts is kept once
+ * for everybody, so a broadcast does not touch any per-customer entry.
+ * Changes to a count that is in use (cached) are pushed to
+ * /topic/notifications/{customerId}/unread; a broadcast is announced on the
+ * role topic instead, and clients add it themselves.
+ * Entries are loaded with two index lookups and expire after a TTL, which also
+ * bounds the drift from writes made by other instances.
+ */
+@Service
+public class UnreadNotificationCounter {
+
+    private static final String OWN_UNREAD_SQL = """
+            SELECT count(*) FROM notifications
+            WHERE receiver_customer_id = ? AND read = false
+            """;
+
+    private static final String BROADCASTS_READ_SQL = """
+            SELECT count(*) FROM notification_receipts r
+            JOIN notifications n ON n.id = r.notification_id
+            WHERE r.recipient_id = ?
+              AND n.receiver_customer_id IS NULL AND n.receiver_role = 'CUSTOMER'
+            """;
+
+    private static final String BROADCASTS_SQL = """
+            SELECT count(*) FROM notifications
+            WHERE receiver_customer_id IS NULL AND receiver_role = 'CUSTOMER'
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CoalescingMessagePublisher publisher;
+
+    private record Counts(AtomicLong ownUnread, AtomicLong broadcastsRead) {
+    }
+
+    private final Cache<Long, Counts> counts;
+
+    // customer broadcasts ever sent; null until first needed
+    private volatile AtomicLong broadcasts;
+
+    public UnreadNotificationCounter(JdbcTemplate jdbcTemplate,
+                                     CoalescingMessagePublisher publisher,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${app.notifications.unread-cache-size:50000}") long cacheSize,
+                                     @Value("${app.notifications.unread-ttl-seconds:300}") long ttlSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.publisher = publisher;
+        this.counts = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, counts, "notifications.unread");
+    }
+
+    public long unread(Long customerId) {
+        return unread(entry(customerId));
+    }
+
+    /* =======================
+       CHANGES (after commit)
+       ======================= */
+    public void notified(Long customerId, long count) {
+        Counts entry = counts.getIfPresent(customerId);
+        if (entry != null) {
+            entry.ownUnread().addAndGet(count);
+            push(customerId, entry);
+        }
+    }
+
+    public void customerBroadcast() {
+        AtomicLong total = broadcasts;
+        if (total != null) {
+            total.incrementAndGet();
+        }
+    }
+
+    public void read(Long customerId, long own, long broadcastsRead) {
+        if (own == 0 && broadcastsRead == 0) {
+            return;
+        }
+        Counts entry = counts.getIfPresent(customerId);
+        if (entry != null) {
+            entry.ownUnread().addAndGet(-own);
+            entry.broadcastsRead().addAndGet(broadcastsRead);
+            push(customerId, entry);
+        }
+    }
+
+    // broadcasts sent by other instances
+    @Scheduled(fixedDelayString = "${app.notifications.broadcast-refresh-ms:300000}")
+    public void refreshBroadcasts() {
+        broadcasts = null;
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private Counts entry(Long customerId) {
+        return counts.get(customerId, id -> new Counts(
+                new AtomicLong(count(OWN_UNREAD_SQL, id)),
+                new AtomicLong(count(BROADCASTS_READ_SQL, id))));
+    }
+
+    private long broadcasts() {
+        AtomicLong total = broadcasts;
+        if (total == null) {
+            synchronized (this) {
+                if (broadcasts == null) {
+                    broadcasts = new AtomicLong(count(BROADCASTS_SQL));
+                }
+                total = broadcasts;
+            }
+        }
+        return total.get();
+    }
+
+    private long unread(Counts entry) {
+        return Math.max(0, entry.ownUnread().get() + broadcasts() - entry.broadcastsRead().get());
+    }
+
+    private void push(Long customerId, Counts entry) {
+        publisher.publishLatest("/topic/notifications/" + customerId + "/unread",
+                Map.of("customerId", customerId, "unread", unread(entry)));
+    }
+
+    private long count(String sql, Object... args) {
+        Long count = jdbcTemplate.queryForObject(sql, Long.class, args);
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,68 @@
+package org.wldu.webservices.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BinaryOperator;
+
+/**
+ * Pushes state updates to a destination at most once per flush interval.
+ * Updates published to the same destination before the next flush are merged
+ * into one message (by default the newest wins), so a burst of changes costs
+ * subscribers one frame instead of one per change. Only for destinations whose
+ * messages describe state; events that must all arrive go to the template directly.
+ */
+@Component
+public class CoalescingMessagePublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(CoalescingMessagePublisher.class);
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    // destination -> update not sent yet
+    private final Map<String, Object> pending = new ConcurrentHashMap<>();
+
+    private final Counter coalesced;
+
+    public CoalescingMessagePublisher(SimpMessagingTemplate messagingTemplate, MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.coalesced = Counter.builder("websocket.messages.coalesced")
+                .description("Updates merged into a pending update for the same destination")
+                .register(meterRegistry);
+    }
+
+    public void publishLatest(String destination, Object payload) {
+        publish(destination, payload, (older, newer) -> newer);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> void publish(String destination, T payload, BinaryOperator<T> merge) {
+        pending.merge(destination, payload, (older, newer) -> {
+            coalesced.increment();
+            return merge.apply((T) older, (T) newer);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.websocket.coalesce-ms:200}")
+    public void flush() {
+        for (String destination : pending.keySet()) {
+            Object payload = pending.remove(destination);
+            if (payload == null) {
+                continue;
+            }
+            try {
+                messagingTemplate.convertAndSend(destination, payload);
+            } catch (RuntimeException ex) {
+                // state updates: the next one carries the current state anyway
+                log.warn("Could not push update to {}", destination, ex);
+            }
+        }
+    }
+}
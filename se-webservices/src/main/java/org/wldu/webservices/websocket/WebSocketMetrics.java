@@ -0,0 +1,113 @@
+package org.wldu.webservices.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Meters for the STOMP fan-out: channel queue depth, frames dropped because the
+ * outbound queue was full, sessions closed for being too slow, and the time from
+ * a publish to the frame being written to each subscriber, per destination.
+ */
+@Component
+public class WebSocketMetrics {
+
+    // set when a message enters the broker, copied by the broker onto every subscriber's frame
+    static final String PUBLISHED_AT = "fanOutPublishedAt";
+
+    // per-customer destinations share one timer: /topic/notifications/42 -> /topic/notifications/{id}
+    private static final Pattern ID_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+
+    private final MeterRegistry meterRegistry;
+    private final Counter dropped;
+    private final Counter slowSessions;
+
+    public WebSocketMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.dropped = Counter.builder("websocket.messages.dropped")
+                .description("Frames dropped because the outbound channel queue was full")
+                .register(meterRegistry);
+        this.slowSessions = Counter.builder("websocket.sessions.closed.slow")
+                .description("Sessions closed for exceeding the send time or buffer limit")
+                .register(meterRegistry);
+    }
+
+    public void monitor(String channel, ThreadPoolTaskExecutor executor) {
+        Gauge.builder("websocket.channel.queue", executor, ThreadPoolTaskExecutor::getQueueSize)
+                .description("Messages waiting for a channel thread")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        Gauge.builder("websocket.channel.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .tag("channel", channel)
+                .register(meterRegistry);
+    }
+
+    // outbound overflow: the frame is dropped, the subscriber catches up on the next one
+    public RejectedExecutionHandler dropAndCount() {
+        return (task, executor) -> dropped.increment();
+    }
+
+    public ChannelInterceptor publishStamp() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+                    return message;
+                }
+                return MessageBuilder.fromMessage(message)
+                        .setHeaderIfAbsent(PUBLISHED_AT, System.nanoTime())
+                        .build();
+            }
+        };
+    }
+
+    public ExecutorChannelInterceptor fanOutTimer() {
+        return new ExecutorChannelInterceptor() {
+            @Override
+            public void afterMessageHandled(Message<?> message, MessageChannel channel,
+                                            MessageHandler handler, @Nullable Exception ex) {
+                if (!(message.getHeaders().get(PUBLISHED_AT) instanceof Long publishedAt)) {
+                    return;
+                }
+                String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+                Timer.builder("websocket.fanout")
+                        .description("Time from publish to the frame being written to a subscriber")
+                        .tag("destination", destination == null ? "none" : ID_SEGMENT.matcher(destination).replaceAll("/{id}"))
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - publishedAt, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    public WebSocketHandler countSlowSessions(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                if (CloseStatus.SESSION_NOT_RELIABLE.equalsCode(closeStatus)) {
+                    slowSessions.increment();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+}
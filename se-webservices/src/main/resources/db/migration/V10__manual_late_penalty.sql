@@ -0,0 +1,4 @@
+-- A late fee changed by hand (waived or reduced on the penalty page) is marked so the
+-- nightly overdue scan and the return path no longer recompute it.
+
+ALTER TABLE borrow_books ADD COLUMN IF NOT EXISTS late_penalty_manual boolean NOT NULL DEFAULT false;
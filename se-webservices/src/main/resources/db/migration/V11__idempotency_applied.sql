@@ -0,0 +1,11 @@
+-- APPLIED: the request's own transaction committed but its response is not stored yet.
+-- Written in that transaction, so such a key is never released or taken over and a
+-- retry can not run the request a second time.
+
+ALTER TABLE idempotency_keys DROP CONSTRAINT IF EXISTS idempotency_keys_status_check;
+ALTER TABLE idempotency_keys ADD CONSTRAINT idempotency_keys_status_check
+    CHECK (status IN ('IN_PROGRESS', 'APPLIED', 'COMPLETED'));
+
+DROP INDEX IF EXISTS ix_idempotency_keys_claim;
+CREATE INDEX IF NOT EXISTS ix_idempotency_keys_claim ON idempotency_keys (claim_token)
+    WHERE status IN ('IN_PROGRESS', 'APPLIED');
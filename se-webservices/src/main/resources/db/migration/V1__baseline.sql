@@ -0,0 +1,119 @@
+-- Baseline: the schema as hibernate ddl-auto=update created it, plus what the entities
+-- gained since. Databases that predate migrations are baselined at version 0
+-- (spring.flyway.baseline-version), so this script also runs against them: every
+-- statement is idempotent, and the ALTERs at the end add the newer columns to old tables.
+
+CREATE TABLE IF NOT EXISTS books (
+    id                bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    version           bigint,
+    title             varchar(255),
+    author            varchar(255),
+    isbn              varchar(255) UNIQUE,
+    category          varchar(255),
+    published_year    integer,
+    description       text,
+    price             numeric(10, 2),
+    cover_image_url   varchar(255),
+    total_copies      integer,
+    copies_available  integer,
+    created_at        timestamp(6),
+    updated_at        timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS customers (
+    id            bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name          varchar(255),
+    email         varchar(255) NOT NULL UNIQUE,
+    phone_number  varchar(255) NOT NULL UNIQUE,
+    role          varchar(255),
+    created_at    timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS borrow_books (
+    id            bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    version       bigint,
+    customer_id   bigint REFERENCES customers (id),
+    book_id       bigint REFERENCES books (id),
+    borrow_date   timestamp(6),
+    return_date   timestamp(6),
+    returned      boolean NOT NULL,
+    broken_pages  integer,
+    late_penalty  float(53),
+    lost          boolean,
+    lost_price    float(53),
+    status        boolean
+);
+
+CREATE TABLE IF NOT EXISTS materials (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name         varchar(255),
+    image        varchar(255),
+    category     varchar(255)
+        CHECK (category IN ('BOOK', 'MAGAZINE', 'NEWSPAPER', 'COMPUTER', 'TABLE', 'CHAIR', 'OTHER')),
+    quantity     integer,
+    location     varchar(255),
+    borrowable   boolean,
+    description  varchar(255)
+);
+
+CREATE TABLE IF NOT EXISTS digital_materials (
+    id            bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    title         varchar(255),
+    description   varchar(255),
+    file_name     varchar(255),
+    file_type     varchar(255),
+    file_size     bigint NOT NULL,
+    readable      boolean NOT NULL,
+    downloadable  boolean NOT NULL,
+    upload_at     timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS notifications (
+    id                    bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    title                 varchar(255),
+    message               varchar(255),
+    receiver_role         varchar(255) CHECK (receiver_role IN ('CUSTOMER', 'LIBRARIAN', 'ADMIN')),
+    receiver_customer_id  bigint,
+    read                  boolean NOT NULL,
+    created_at            timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS user12 (
+    id             bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username       varchar(255) NOT NULL UNIQUE,
+    password       varchar(255) NOT NULL,
+    role           varchar(255) NOT NULL,
+    email          varchar(255),
+    active         boolean NOT NULL,
+    token_version  bigint NOT NULL DEFAULT 0
+);
+
+CREATE TABLE IF NOT EXISTS refresh_tokens (
+    id          bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    token_hash  varchar(64) NOT NULL,
+    user_id     bigint NOT NULL,
+    family_id   varchar(36) NOT NULL,
+    created_at  timestamp(6) NOT NULL,
+    expires_at  timestamp(6) NOT NULL,
+    revoked_at  timestamp(6)
+);
+CREATE UNIQUE INDEX IF NOT EXISTS ux_refresh_tokens_hash ON refresh_tokens (token_hash);
+CREATE INDEX IF NOT EXISTS ix_refresh_tokens_family ON refresh_tokens (family_id);
+CREATE INDEX IF NOT EXISTS ix_refresh_tokens_user ON refresh_tokens (user_id);
+
+CREATE TABLE IF NOT EXISTS job_checkpoints (
+    job_name    varchar(64) PRIMARY KEY,
+    run_date    date,
+    as_of       timestamp(6),
+    last_id     bigint,
+    processed   bigint NOT NULL,
+    updated     bigint NOT NULL,
+    status      varchar(16),
+    started_at  timestamp(6),
+    updated_at  timestamp(6)
+);
+
+-- columns added after the ddl-auto=update era; no-ops on a database created by this script
+ALTER TABLE user12 ADD COLUMN IF NOT EXISTS token_version bigint NOT NULL DEFAULT 0;
+ALTER TABLE books ADD COLUMN IF NOT EXISTS version bigint;
+ALTER TABLE borrow_books ADD COLUMN IF NOT EXISTS version bigint;
@@ -0,0 +1,38 @@
+-- Indexes for the lookups and list sorts the API actually runs.
+-- CONCURRENTLY keeps the tables writable while an existing database is indexed;
+-- flyway runs this script outside a transaction for that reason, and must not hold its
+-- lock in an open transaction either (spring.flyway.postgresql.transactional-lock=false).
+
+-- loans: per customer / per book histories and the entity-graph joins
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_borrow_books_customer ON borrow_books (customer_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_borrow_books_book ON borrow_books (book_id);
+
+-- open loans only: a small slice of the table, so partial indexes instead of one on returned.
+-- the overdue scan walks open loans by id; the desk looks up a customer's open loans
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_borrow_books_open ON borrow_books (id) INCLUDE (return_date)
+    WHERE returned = false;
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_borrow_books_open_due ON borrow_books (return_date)
+    WHERE returned = false;
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_borrow_books_open_customer ON borrow_books (customer_id)
+    WHERE returned = false;
+
+-- inboxes
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_notifications_customer ON notifications (receiver_customer_id, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_notifications_role ON notifications (receiver_role, id);
+
+-- book list sorts (BookService.SORTABLE_FIELDS); id breaks ties for keyset pages.
+-- id and isbn are covered by the primary key and the unique constraint
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_books_title ON books (title, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_books_author ON books (author, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_books_category ON books (category, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_books_published_year ON books (published_year, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_books_price ON books (price, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_books_total_copies ON books (total_copies, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_books_copies_available ON books (copies_available, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_books_created_at ON books (created_at, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_books_updated_at ON books (updated_at, id);
+
+-- customer list sorts (CustomerService.SORTABLE_FIELDS); email and phone_number are unique already
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_customers_name ON customers (name, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_customers_role ON customers (role, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS ix_customers_created_at ON customers (created_at, id);
@@ -0,0 +1,24 @@
+-- Hold queue: WAITING holds of a book are served in id order.
+
+CREATE TABLE IF NOT EXISTS book_holds (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    book_id      bigint NOT NULL REFERENCES books (id),
+    customer_id  bigint NOT NULL REFERENCES customers (id),
+    status       varchar(16) NOT NULL
+        CHECK (status IN ('WAITING', 'READY', 'FULFILLED', 'CANCELLED', 'EXPIRED')),
+    created_at   timestamp(6) NOT NULL,
+    ready_at     timestamp(6),
+    expires_at   timestamp(6)
+);
+
+-- one active hold per customer and book
+CREATE UNIQUE INDEX IF NOT EXISTS ux_book_holds_active ON book_holds (book_id, customer_id)
+    WHERE status IN ('WAITING', 'READY');
+
+-- queue of a book, and the expiry job's scan of set-aside copies
+CREATE INDEX IF NOT EXISTS ix_book_holds_queue ON book_holds (book_id, id)
+    WHERE status = 'WAITING';
+CREATE INDEX IF NOT EXISTS ix_book_holds_ready ON book_holds (expires_at)
+    WHERE status = 'READY';
+
+CREATE INDEX IF NOT EXISTS ix_book_holds_customer ON book_holds (customer_id, id);
@@ -0,0 +1,26 @@
+-- Outstanding fines per customer, maintained by the application with delta upserts.
+
+CREATE TABLE IF NOT EXISTS customer_balances (
+    customer_id  bigint PRIMARY KEY REFERENCES customers (id) ON DELETE CASCADE,
+    outstanding  numeric(12, 2) NOT NULL DEFAULT 0,
+    open_items   integer NOT NULL DEFAULT 0,
+    updated_at   timestamp(6) NOT NULL
+);
+
+-- top debtors: only customers who owe something are indexed
+CREATE INDEX IF NOT EXISTS ix_customer_balances_debtors ON customer_balances (outstanding DESC, customer_id)
+    WHERE outstanding > 0;
+
+-- backfill from the loans; the broken page fee is app.penalty.broken-page-fee (flyway placeholder)
+INSERT INTO customer_balances (customer_id, outstanding, open_items, updated_at)
+SELECT customer_id, SUM(amount), COUNT(*) FILTER (WHERE amount > 0), now()
+FROM (
+    SELECT customer_id,
+           COALESCE(late_penalty, 0)
+             + COALESCE(broken_pages, 0) * ${broken_page_fee}
+             + CASE WHEN lost THEN COALESCE(lost_price, 0) ELSE 0 END AS amount
+    FROM borrow_books
+    WHERE customer_id IS NOT NULL AND COALESCE(status, false) = false
+) loans
+GROUP BY customer_id
+ON CONFLICT (customer_id) DO NOTHING;
@@ -0,0 +1,16 @@
+-- Idempotency-Key records: the stored response of the first request with each key.
+-- key_hash is SHA-256 of the user and the client's key, fingerprint SHA-256 of the request.
+
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    key_hash               varchar(64) PRIMARY KEY,
+    fingerprint            varchar(64) NOT NULL,
+    status                 varchar(16) NOT NULL CHECK (status IN ('IN_PROGRESS', 'COMPLETED')),
+    response_status        integer,
+    response_content_type  varchar(255),
+    response_body          bytea,
+    locked_until           timestamp(6) NOT NULL,
+    created_at             timestamp(6) NOT NULL,
+    expires_at             timestamp(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS ix_idempotency_keys_expires ON idempotency_keys (expires_at);
@@ -0,0 +1,19 @@
+-- Circulation events written in the transaction of the change they describe and
+-- drained by the outbox relay. published_at stays null until the relay has fanned
+-- the event out; attempts counts failed relays.
+
+CREATE TABLE IF NOT EXISTS outbox_events (
+    id            bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    event_type    varchar(32) NOT NULL,
+    borrow_id     bigint,
+    customer_id   bigint,
+    book_id       bigint,
+    payload       text NOT NULL,
+    created_at    timestamp(6) NOT NULL,
+    published_at  timestamp(6),
+    attempts      integer NOT NULL DEFAULT 0
+);
+
+-- the relay only ever reads the unpublished head of the table
+CREATE INDEX IF NOT EXISTS ix_outbox_events_pending ON outbox_events (id) WHERE published_at IS NULL;
+CREATE INDEX IF NOT EXISTS ix_outbox_events_published ON outbox_events (published_at) WHERE published_at IS NOT NULL;
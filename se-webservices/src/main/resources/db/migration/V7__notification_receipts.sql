@@ -0,0 +1,16 @@
+-- Role broadcasts: one notifications row with receiver_role set and no receiver_customer_id.
+-- Read state per recipient is kept sparsely: a receipt row exists once the recipient
+-- has read the broadcast, so sending one costs a single insert whatever the audience.
+-- recipient_id is a customer id for CUSTOMER broadcasts and a user id for staff ones.
+
+CREATE TABLE IF NOT EXISTS notification_receipts (
+    notification_id  bigint NOT NULL REFERENCES notifications (id) ON DELETE CASCADE,
+    recipient_id     bigint NOT NULL,
+    read_at          timestamp(6) NOT NULL,
+    PRIMARY KEY (notification_id, recipient_id)
+);
+
+CREATE INDEX IF NOT EXISTS ix_notification_receipts_recipient ON notification_receipts (recipient_id, notification_id);
+
+CREATE INDEX IF NOT EXISTS ix_notifications_broadcast ON notifications (receiver_role, id)
+    WHERE receiver_customer_id IS NULL;
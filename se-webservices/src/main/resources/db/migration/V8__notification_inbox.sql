@@ -0,0 +1,16 @@
+-- Notification inbox: keyset pages ordered by (created_at, id), read from one index
+-- range per source (own notifications, customer broadcasts), and unread counts.
+
+UPDATE notifications SET created_at = TIMESTAMP '1970-01-01 00:00:00' WHERE created_at IS NULL;
+ALTER TABLE notifications ALTER COLUMN created_at SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS ix_notifications_inbox
+    ON notifications (receiver_customer_id, created_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS ix_notifications_broadcast_inbox
+    ON notifications (receiver_role, created_at DESC, id DESC)
+    WHERE receiver_customer_id IS NULL;
+
+CREATE INDEX IF NOT EXISTS ix_notifications_unread
+    ON notifications (receiver_customer_id)
+    WHERE read = false;
@@ -0,0 +1,8 @@
+-- Each claim of an idempotency key gets its own token: only the request holding the
+-- claim may renew, complete or release it. Rows claimed before this column existed
+-- have none and can only expire or be taken over.
+
+ALTER TABLE idempotency_keys ADD COLUMN IF NOT EXISTS claim_token varchar(36);
+
+CREATE INDEX IF NOT EXISTS ix_idempotency_keys_claim ON idempotency_keys (claim_token)
+    WHERE status = 'IN_PROGRESS';
@@ -0,0 +1,76 @@
+package org.wldu.webservices.auths;
+
+import com.jayway.jsonpath.JsonPath;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The main admin is seeded with app.main-admin.role, which is "ADMIN " (no ROLE_
+ * prefix, trailing space). Its token must still pass hasRole('ADMIN').
+ * A rejected token answers 401, which is what the frontend refreshes on.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureEmbeddedDatabase(provider = AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY)
+class MainAdminLoginTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void seededMainAdminReachesAdminEndpoints() throws Exception {
+        String token = JsonPath.read(login(), "$.token");
+
+        mockMvc.perform(get("/api/admin/dashboard")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void rejectedTokenIsUnauthorizedUntilRefreshed() throws Exception {
+        String refreshToken = JsonPath.read(login(), "$.refreshToken");
+
+        mockMvc.perform(get("/api/admin/dashboard")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer expired.or.forged"))
+                .andExpect(status().isUnauthorized());
+
+        String refreshed = mockMvc.perform(post("/api/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"" + refreshToken + "\"}"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        mockMvc.perform(get("/api/admin/dashboard")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + JsonPath.read(refreshed, "$.token")))
+                .andExpect(status().isOk());
+    }
+
+    private String login() throws Exception {
+        MvcResult login = mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"superAdmin\",\"password\":\"admin123\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        return mockMvc.perform(asyncDispatch(login))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+    }
+}
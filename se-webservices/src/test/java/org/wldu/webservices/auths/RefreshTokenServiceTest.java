@@ -0,0 +1,102 @@
+package org.wldu.webservices.auths;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.wldu.webservices.exception.UnauthorizedException;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Refresh token rotation against a real database: the in-memory active set and
+ * the refresh_tokens rows must agree on what may still be used.
+ */
+@SpringBootTest
+@AutoConfigureEmbeddedDatabase(provider = AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY)
+class RefreshTokenServiceTest {
+
+    private static final String PASSWORD = "secret123";
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private UsersService usersService;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Test
+    void rotationReplacesTheRefreshTokenAndIssuesAnAccessToken() {
+        Users user = user();
+        String first = refreshTokenService.issue(user);
+
+        AuthResponse rotated = refreshTokenService.rotate(first);
+
+        assertThat(rotated.getToken()).isNotBlank();
+        assertThat(rotated.getRefreshToken()).isNotBlank().isNotEqualTo(first);
+        assertThat(rotated.getUser().getId()).isEqualTo(user.getId());
+
+        // the replacement rotates in turn
+        assertThat(refreshTokenService.rotate(rotated.getRefreshToken()).getRefreshToken())
+                .isNotEqualTo(rotated.getRefreshToken());
+    }
+
+    @Test
+    void reusingARotatedTokenRevokesTheWholeFamily() {
+        Users user = user();
+        String first = refreshTokenService.issue(user);
+        String second = refreshTokenService.rotate(first).getRefreshToken();
+
+        assertThatThrownBy(() -> refreshTokenService.rotate(first))
+                .isInstanceOf(UnauthorizedException.class);
+
+        // the legitimate holder of the newer token is logged out as well
+        assertThatThrownBy(() -> refreshTokenService.rotate(second))
+                .isInstanceOf(UnauthorizedException.class);
+    }
+
+    @Test
+    void reuseDoesNotTouchOtherLogins() {
+        Users user = user();
+        String stolen = refreshTokenService.issue(user);
+        String otherDevice = refreshTokenService.issue(user);
+        refreshTokenService.rotate(stolen);
+
+        assertThatThrownBy(() -> refreshTokenService.rotate(stolen))
+                .isInstanceOf(UnauthorizedException.class);
+
+        assertThat(refreshTokenService.rotate(otherDevice).getRefreshToken()).isNotBlank();
+    }
+
+    @Test
+    void passwordChangeRevokesEveryRefreshToken() {
+        Users user = user();
+        String first = refreshTokenService.issue(user);
+        String rotated = refreshTokenService.rotate(refreshTokenService.issue(user)).getRefreshToken();
+
+        usersService.resetPassword(user.getId(), PASSWORD, "changed123");
+
+        assertThatThrownBy(() -> refreshTokenService.rotate(first))
+                .isInstanceOf(UnauthorizedException.class);
+        assertThatThrownBy(() -> refreshTokenService.rotate(rotated))
+                .isInstanceOf(UnauthorizedException.class);
+    }
+
+    private Users user() {
+        Users user = new Users();
+        user.setUsername("user-" + UUID.randomUUID());
+        user.setPassword(passwordEncoder.encode(PASSWORD));
+        user.setRole("ROLE_CUSTOMER");
+        user.setActive(true);
+        return usersRepository.save(user);
+    }
+}
@@ -0,0 +1,112 @@
+package org.wldu.webservices.auths;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.wldu.webservices.support.EmbeddedDatabaseTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+
+/**
+ * Account changes: the token version moves exactly once per change, and a change
+ * and the revocation of its refresh tokens commit or fail together.
+ */
+class UsersServiceTest extends EmbeddedDatabaseTest {
+
+    private static final String PASSWORD = "secret123";
+
+    @Autowired
+    private UsersService usersService;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private TokenVersionRegistry tokenVersionRegistry;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @SpyBean
+    private RefreshTokenService refreshTokenService;
+
+    @Test
+    void everyChangeBumpsTheVersionOnce() {
+        Users user = user();
+
+        usersService.assignRole(user.getId(), "LIBRARIAN");
+        usersService.deactivateUser(user.getId());
+
+        assertThat(tokenVersion(user)).isEqualTo(2);
+        assertThat(tokenVersionRegistry.isCurrent(user.getUsername(), 2)).isTrue();
+        assertThat(tokenVersionRegistry.isCurrent(user.getUsername(), 1)).isFalse();
+    }
+
+    @Test
+    void concurrentChangesEachGetTheirOwnVersion() {
+        Users user = user();
+
+        List<CompletableFuture<Void>> changes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            changes.add(CompletableFuture.runAsync(() -> usersService.toggleActivation(user.getId())));
+        }
+        changes.forEach(CompletableFuture::join);
+
+        assertThat(tokenVersion(user)).isEqualTo(8);
+        assertThat(tokenVersionRegistry.isCurrent(user.getUsername(), 8)).isTrue();
+    }
+
+    @Test
+    void failedRevocationKeepsTheOldPassword() {
+        Users user = user();
+        doThrow(new IllegalStateException("refresh_tokens unavailable"))
+                .when(refreshTokenService).revokeAllForUser(anyLong());
+
+        assertThatThrownBy(() -> usersService.resetPassword(user.getId(), PASSWORD, "changed123"))
+                .isInstanceOf(IllegalStateException.class);
+
+        String stored = jdbcTemplate.queryForObject("SELECT password FROM user12 WHERE id = ?",
+                String.class, user.getId());
+        assertThat(passwordEncoder.matches(PASSWORD, stored)).isTrue();
+        assertThat(tokenVersion(user)).isZero();
+        assertThat(tokenVersionRegistry.isCurrent(user.getUsername(), 0)).isTrue();
+    }
+
+    @Test
+    void changeMadeByAnotherInstanceIsSeenAfterTheTtl() throws Exception {
+        Users user = user();
+        TokenVersionRegistry registry = new TokenVersionRegistry(usersRepository, new SimpleMeterRegistry(), 100, 1);
+        assertThat(registry.isCurrent(user.getUsername(), 0)).isTrue();
+
+        // another instance changed the account
+        jdbcTemplate.update("UPDATE user12 SET token_version = token_version + 1 WHERE id = ?", user.getId());
+        assertThat(registry.isCurrent(user.getUsername(), 0)).isTrue();
+
+        Thread.sleep(1100);
+        assertThat(registry.isCurrent(user.getUsername(), 0)).isFalse();
+        assertThat(registry.isCurrent(user.getUsername(), 1)).isTrue();
+    }
+
+    private long tokenVersion(Users user) {
+        return jdbcTemplate.queryForObject("SELECT token_version FROM user12 WHERE id = ?", Long.class, user.getId());
+    }
+
+    private Users user() {
+        Users user = new Users();
+        user.setUsername("account-" + UUID.randomUUID());
+        user.setPassword(passwordEncoder.encode(PASSWORD));
+        user.setRole("ROLE_USER");
+        user.setActive(true);
+        return usersRepository.save(user);
+    }
+}
@@ -0,0 +1,196 @@
+package org.wldu.webservices.controllers;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import jakarta.persistence.EntityManagerFactory;
+import net.ttddyy.dsproxy.QueryCountHolder;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.wldu.webservices.auths.JwtUtil;
+import org.wldu.webservices.auths.Users;
+import org.wldu.webservices.auths.UsersRepository;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.entities.BorrowBook;
+import org.wldu.webservices.entities.Customer;
+import org.wldu.webservices.entities.Notification;
+import org.wldu.webservices.entities.NotificationRole;
+import org.wldu.webservices.repositories.BookRepository;
+import org.wldu.webservices.repositories.BorrowRepository;
+import org.wldu.webservices.repositories.CustomerRepository;
+import org.wldu.webservices.repositories.NotificationRepository;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Statement budget per endpoint, so an N+1 (a lazy association touched per row,
+ * a lookup inside a loop) fails the build instead of showing up in production.
+ * Each endpoint is called once to warm the per-process caches (token versions,
+ * list counts); the second-level cache is then emptied and the second call is
+ * measured, so entity rows always come from the database.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureEmbeddedDatabase(provider = AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class EndpointQueryCountTest {
+
+    private static final int CUSTOMERS = 4;
+    private static final int BOOKS = 5;
+
+    @TestConfiguration
+    static class QueryCountConfig {
+
+        // wraps the embedded datasource; counts are kept per thread, and MockMvc runs on the test thread
+        @Bean
+        static BeanPostProcessor queryCountingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)) {
+                        return ProxyDataSourceBuilder.create(dataSource)
+                                .name("query-count")
+                                .countQuery()
+                                .build();
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private BorrowRepository borrowRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    private String bearer;
+    private Long customerId;
+    private Long bookId;
+
+    @BeforeAll
+    void seed() {
+        Users admin = new Users();
+        admin.setUsername("query-count-admin");
+        admin.setPassword("not-used-by-these-tests");
+        admin.setRole("ROLE_ADMIN");
+        admin.setActive(true);
+        bearer = "Bearer " + jwtUtil.generateToken(usersRepository.save(admin));
+
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            Book book = new Book();
+            book.setTitle("Query Count " + i);
+            book.setAuthor("Author " + i);
+            book.setIsbn("QC-" + i);
+            book.setTotalCopies(CUSTOMERS);
+            book.setCopiesAvailable(CUSTOMERS);
+            books.add(bookRepository.save(book));
+        }
+
+        // every customer borrows every book: a per-row lookup shows up as CUSTOMERS x BOOKS statements
+        LocalDateTime now = LocalDateTime.now();
+        for (int c = 0; c < CUSTOMERS; c++) {
+            Customer customer = new Customer();
+            customer.setName("Reader " + c);
+            customer.setEmail("reader" + c + "@example.com");
+            customer.setPhoneNumber(String.format("0911%06d", c));
+            customer = customerRepository.save(customer);
+
+            for (Book book : books) {
+                BorrowBook borrow = new BorrowBook();
+                borrow.setCustomer(customer);
+                borrow.setBook(book);
+                borrow.setBorrowDate(now.minusDays(20));
+                borrow.setReturnDate(now.minusDays(c));
+                borrowRepository.save(borrow);
+            }
+
+            notificationRepository.save(new Notification("Welcome", "Hello " + c, NotificationRole.CUSTOMER, customer.getId()));
+            notificationRepository.save(new Notification("Reminder", "Due soon", NotificationRole.CUSTOMER, customer.getId()));
+            customerId = customer.getId();
+        }
+        bookId = books.get(0).getId();
+    }
+
+    Stream<Arguments> endpoints() {
+        return Stream.of(
+                Arguments.of("/api/books/list?size=10", 2),
+                Arguments.of("/api/books/list?size=10&cursor=", 2),
+                Arguments.of("/api/books/list?size=10&sortBy=copiesAvailable&sortDir=desc", 2),
+                Arguments.of("/api/customers/list?size=10", 2),
+                Arguments.of("/api/customers/list?size=10&cursor=", 2),
+                Arguments.of("/api/customers/" + customerId, 1),
+                Arguments.of("/api/customers/" + customerId + "/balance", 2),
+                Arguments.of("/api/customers/debtors?limit=10", 1),
+                Arguments.of("/api/borrow/all", 1),
+                Arguments.of("/api/borrow/list?size=10", 2),
+                Arguments.of("/api/borrow/list?size=10&overdue=true", 2),
+                Arguments.of("/api/borrow/customers/" + customerId, 1),
+                Arguments.of("/api/borrow/book/" + bookId, 1),
+                Arguments.of("/api/notifications/customer/" + customerId, 1),
+                Arguments.of("/api/notifications/customer/" + customerId + "/inbox?size=1", 1),
+                Arguments.of("/api/notifications/customer/" + customerId + "/unread-count", 0),
+                Arguments.of("/api/admin/dashboard", 0)
+        );
+    }
+
+    @ParameterizedTest(name = "{0} runs at most {1} statements")
+    @MethodSource("endpoints")
+    void staysWithinStatementBudget(String uri, int maxStatements) throws Exception {
+        call(uri);
+
+        entityManagerFactory.getCache().evictAll();
+        QueryCountHolder.clear();
+
+        call(uri);
+
+        long statements = QueryCountHolder.getGrandTotal().getTotal();
+        assertThat(statements)
+                .as("statements run by GET %s", uri)
+                .isLessThanOrEqualTo(maxStatements);
+    }
+
+    private void call(String uri) throws Exception {
+        mockMvc.perform(get(uri).header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,275 @@
+package org.wldu.webservices.idempotency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.wldu.webservices.auths.JwtUtil;
+import org.wldu.webservices.auths.Users;
+import org.wldu.webservices.auths.UsersRepository;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.repositories.BorrowRepository;
+import org.wldu.webservices.support.EmbeddedDatabaseTest;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Idempotency-Key on checkouts: a retry is answered from the stored response,
+ * a retry during the first request gets 409, another request under the same key 422.
+ * The store tests cover the claim lease: renewal while a request runs, and a
+ * claim taken over after its lease ran out; and the key marked APPLIED by the
+ * request's own transaction, which a failure after the commit can not release.
+ */
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class IdempotencyFilterTest extends EmbeddedDatabaseTest {
+
+    private static final String USERNAME = "idempotency-desk";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private IdempotencyStore store;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private BorrowRepository borrowRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private String bearer;
+
+    @BeforeAll
+    void seed() {
+        Users desk = new Users();
+        desk.setUsername(USERNAME);
+        desk.setPassword("not-used-by-these-tests");
+        desk.setRole("ROLE_LIBRARIAN");
+        desk.setActive(true);
+        bearer = "Bearer " + jwtUtil.generateToken(usersRepository.save(desk));
+    }
+
+    /* =======================
+       FILTER
+       ======================= */
+    @Test
+    void retryReplaysTheStoredResponse() throws Exception {
+        Book book = newBook(3);
+        Long customerId = newCustomer().getId();
+        String key = UUID.randomUUID().toString();
+
+        MvcResult first = mockMvc.perform(checkout(key, customerId, book.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(IdempotencyFilter.REPLAYED_HEADER))
+                .andReturn();
+
+        MvcResult retry = mockMvc.perform(checkout(key, customerId, book.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(IdempotencyFilter.REPLAYED_HEADER, "true"))
+                .andReturn();
+
+        assertThat(retry.getResponse().getContentAsString())
+                .isEqualTo(first.getResponse().getContentAsString());
+        assertThat(borrowRepository.findByBookId(book.getId())).hasSize(1);
+        assertThat(copiesAvailable(book.getId())).isEqualTo(2);
+    }
+
+    @Test
+    void retryWhileTheFirstRequestRunsIsRejected() throws Exception {
+        Book book = newBook(3);
+        Long customerId = newCustomer().getId();
+        String key = UUID.randomUUID().toString();
+
+        // the first request has claimed the key and not finished yet
+        MockHttpServletRequest running = new MockHttpServletRequest("POST", "/api/borrow/borrow");
+        running.addParameter("customerId", customerId.toString());
+        running.addParameter("bookId", book.getId().toString());
+        String fingerprint = IdempotencyFilter.fingerprint(running, new byte[0]);
+        assertThat(store.begin(keyHash(key), fingerprint).outcome()).isEqualTo(IdempotencyStore.Outcome.STARTED);
+
+        mockMvc.perform(checkout(key, customerId, book.getId()))
+                .andExpect(status().isConflict())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+
+        assertThat(borrowRepository.findByBookId(book.getId())).isEmpty();
+    }
+
+    @Test
+    void sameKeyForAnotherRequestIsRejected() throws Exception {
+        Book book = newBook(3);
+        Book other = newBook(3);
+        Long customerId = newCustomer().getId();
+        String key = UUID.randomUUID().toString();
+
+        mockMvc.perform(checkout(key, customerId, book.getId()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(checkout(key, customerId, other.getId()))
+                .andExpect(status().isUnprocessableEntity());
+
+        assertThat(borrowRepository.findByBookId(other.getId())).isEmpty();
+        assertThat(copiesAvailable(other.getId())).isEqualTo(3);
+    }
+
+    /* =======================
+       STORE
+       ======================= */
+    @Test
+    void renewedLeaseIsNotTakenOver() {
+        IdempotencyStore running = newStore(60);
+        IdempotencyStore retrying = newStore(60);
+        String keyHash = keyHash(UUID.randomUUID().toString());
+
+        IdempotencyStore.Decision claimed = running.begin(keyHash, "fingerprint");
+        assertThat(claimed.outcome()).isEqualTo(IdempotencyStore.Outcome.STARTED);
+
+        // the lease has run out, but the request is still running and renews it
+        jdbcTemplate.update("UPDATE idempotency_keys SET locked_until = now() - interval '1 minute' WHERE key_hash = ?",
+                keyHash);
+        running.renewLeases();
+
+        assertThat(retrying.begin(keyHash, "fingerprint").outcome()).isEqualTo(IdempotencyStore.Outcome.IN_PROGRESS);
+    }
+
+    @Test
+    void completionOfATakenOverClaimIsNotStored() throws Exception {
+        IdempotencyStore crashed = newStore(0);
+        IdempotencyStore retrying = newStore(0);
+        String keyHash = keyHash(UUID.randomUUID().toString());
+
+        IdempotencyStore.Decision stale = crashed.begin(keyHash, "fingerprint");
+        Thread.sleep(10); // a zero lease runs out at once
+        IdempotencyStore.Decision current = retrying.begin(keyHash, "fingerprint");
+        assertThat(current.outcome()).isEqualTo(IdempotencyStore.Outcome.STARTED);
+
+        crashed.complete(keyHash, stale.claim(), "fingerprint", 200, "application/json", "{\"stale\":true}".getBytes());
+        assertThat(keyStatus(keyHash)).isEqualTo(IdempotencyStore.IN_PROGRESS);
+
+        retrying.complete(keyHash, current.claim(), "fingerprint", 200, "application/json", "{}".getBytes());
+        assertThat(keyStatus(keyHash)).isEqualTo(IdempotencyStore.COMPLETED);
+        assertThat(jdbcTemplate.queryForObject("SELECT response_body FROM idempotency_keys WHERE key_hash = ?",
+                byte[].class, keyHash)).isEqualTo("{}".getBytes());
+    }
+
+    @Test
+    void rolledBackRequestReleasesItsKey() {
+        Book book = newBook(3);
+        String keyHash = keyHash(UUID.randomUUID().toString());
+        IdempotencyStore.Decision claimed = store.begin(keyHash, "fingerprint");
+
+        inRequest(claimed.claim(), () -> transactionTemplate.executeWithoutResult(status -> {
+            takeCopy(book);
+            status.setRollbackOnly();
+        }));
+
+        assertThat(store.release(keyHash, claimed.claim())).isTrue();
+        assertThat(store.begin(keyHash, "fingerprint").outcome()).isEqualTo(IdempotencyStore.Outcome.STARTED);
+    }
+
+    @Test
+    void serverErrorAfterTheCommitIsReplayedNotRunAgain() {
+        Book book = newBook(3);
+        String keyHash = keyHash(UUID.randomUUID().toString());
+        IdempotencyStore.Decision claimed = store.begin(keyHash, "fingerprint");
+
+        inRequest(claimed.claim(), () -> transactionTemplate.executeWithoutResult(status -> takeCopy(book)));
+        assertThat(keyStatus(keyHash)).isEqualTo(IdempotencyStore.APPLIED);
+
+        // the response failed afterwards: the filter finds the key applied and stores the error
+        assertThat(store.release(keyHash, claimed.claim())).isFalse();
+        store.complete(keyHash, claimed.claim(), "fingerprint", 500, null, null);
+
+        IdempotencyStore.Decision retry = store.begin(keyHash, "fingerprint");
+        assertThat(retry.outcome()).isEqualTo(IdempotencyStore.Outcome.REPLAY);
+        assertThat(retry.entry().responseStatus()).isEqualTo(500);
+    }
+
+    @Test
+    void crashAfterTheCommitIsNotRunAgain() {
+        Book book = newBook(3);
+        String keyHash = keyHash(UUID.randomUUID().toString());
+        IdempotencyStore.Decision claimed = store.begin(keyHash, "fingerprint");
+
+        inRequest(claimed.claim(), () -> transactionTemplate.executeWithoutResult(status -> takeCopy(book)));
+        // the instance died before storing the response; its lease runs out
+        jdbcTemplate.update("UPDATE idempotency_keys SET locked_until = now() - interval '1 minute' WHERE key_hash = ?",
+                keyHash);
+
+        assertThat(store.begin(keyHash, "fingerprint").outcome()).isEqualTo(IdempotencyStore.Outcome.APPLIED);
+        assertThat(copiesAvailable(book.getId())).isEqualTo(2);
+    }
+
+    @Test
+    void requestThatLostItsClaimIsRolledBack() {
+        Book book = newBook(3);
+        String keyHash = keyHash(UUID.randomUUID().toString());
+        IdempotencyStore.Decision claimed = store.begin(keyHash, "fingerprint");
+        // taken over by a retry while this request was still running
+        jdbcTemplate.update("UPDATE idempotency_keys SET claim_token = ? WHERE key_hash = ?",
+                UUID.randomUUID().toString(), keyHash);
+
+        assertThatThrownBy(() -> inRequest(claimed.claim(), () ->
+                transactionTemplate.executeWithoutResult(status -> takeCopy(book))))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(copiesAvailable(book.getId())).isEqualTo(3);
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private void inRequest(String claim, Runnable work) {
+        store.enter(claim);
+        try {
+            work.run();
+        } finally {
+            store.exit();
+        }
+    }
+
+    private void takeCopy(Book book) {
+        jdbcTemplate.update("UPDATE books SET copies_available = copies_available - 1 WHERE id = ?", book.getId());
+    }
+
+    private MockHttpServletRequestBuilder checkout(String key, Long customerId, Long bookId) {
+        return post("/api/borrow/borrow")
+                .header(HttpHeaders.AUTHORIZATION, bearer)
+                .header(IdempotencyFilter.HEADER, key)
+                .param("customerId", customerId.toString())
+                .param("bookId", bookId.toString());
+    }
+
+    private static String keyHash(String key) {
+        return IdempotencyFilter.sha256(USERNAME + "\n" + key);
+    }
+
+    private IdempotencyStore newStore(long leaseSeconds) {
+        return new IdempotencyStore(jdbcTemplate, new SimpleMeterRegistry(), 24, leaseSeconds, 100);
+    }
+
+    private String keyStatus(String keyHash) {
+        return jdbcTemplate.queryForObject("SELECT status FROM idempotency_keys WHERE key_hash = ?",
+                String.class, keyHash);
+    }
+}
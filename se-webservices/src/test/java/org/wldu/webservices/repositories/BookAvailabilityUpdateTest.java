@@ -0,0 +1,81 @@
+package org.wldu.webservices.repositories;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.entities.Customer;
+import org.wldu.webservices.support.EmbeddedDatabaseTest;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * takeCopy/returnCopy bypass the entity: the cached book must not survive them
+ * stale, and nothing else the caller has loaded may be detached.
+ */
+class BookAvailabilityUpdateTest extends EmbeddedDatabaseTest {
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void cachedBookIsNotStaleAfterTheUpdate() {
+        Long bookId = newBook(3).getId();
+        assertThat(bookRepository.findById(bookId).orElseThrow().getCopiesAvailable()).isEqualTo(3);
+
+        bookRepository.takeCopy(bookId);
+
+        assertThat(bookRepository.findById(bookId).orElseThrow().getCopiesAvailable()).isEqualTo(2);
+    }
+
+    @Test
+    void readDuringTheUpdateDoesNotCacheTheOldRow() {
+        Long bookId = newBook(3).getId();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            bookRepository.takeCopy(bookId);
+
+            // another request still sees the committed row and must not cache it
+            int seenElsewhere = CompletableFuture
+                    .supplyAsync(() -> bookRepository.findById(bookId).orElseThrow().getCopiesAvailable())
+                    .join();
+            assertThat(seenElsewhere).isEqualTo(3);
+        });
+
+        assertThat(bookRepository.findById(bookId).orElseThrow().getCopiesAvailable()).isEqualTo(2);
+    }
+
+    @Test
+    void bookLoadedEarlierInTheTransactionIsReadAgain() {
+        Long bookId = newBook(3).getId();
+
+        int after = transactionTemplate.execute(status -> {
+            Book before = bookRepository.findById(bookId).orElseThrow();
+            assertThat(before.getCopiesAvailable()).isEqualTo(3);
+
+            bookRepository.returnCopy(bookId);
+            return bookRepository.findById(bookId).orElseThrow().getCopiesAvailable();
+        });
+
+        assertThat(after).isEqualTo(4);
+    }
+
+    @Test
+    void otherEntitiesOfTheTransactionStayManaged() {
+        Long bookId = newBook(3).getId();
+        Long customerId = newCustomer().getId();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Customer customer = customerRepository.findById(customerId).orElseThrow();
+            bookRepository.takeCopy(bookId);
+            // no save: dirty checking must still see the change
+            customer.setName("Renamed Reader");
+        });
+
+        assertThat(jdbcTemplate.queryForObject("SELECT name FROM customers WHERE id = ?", String.class, customerId))
+                .isEqualTo("Renamed Reader");
+        assertThat(copiesAvailable(bookId)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,190 @@
+package org.wldu.webservices.services.contracts;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.repositories.BookRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The index on its own: tokenisation, incremental updates and the rebuild,
+ * with the repository mocked so the catalog is exactly what each test says.
+ */
+class BookSearchIndexTest {
+
+    private BookRepository bookRepository;
+    private BookSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = mock(BookRepository.class);
+        index = new BookSearchIndex(bookRepository);
+    }
+
+    /* =======================
+       TOKENISATION
+       ======================= */
+    @Test
+    void tokenizeLowercasesSplitsOnPunctuationAndDropsDuplicates() {
+        assertThat(BookSearchIndex.tokenize("The C++ Programming-Language, the 2nd Ed."))
+                .containsExactly("the", "c", "programming", "language", "2nd", "ed");
+    }
+
+    @Test
+    void tokenizeKeepsLettersOutsideAscii() {
+        assertThat(BookSearchIndex.tokenize("Café Ñandú")).containsExactly("café", "ñandú");
+    }
+
+    @Test
+    void tokenizeOfNothingIsEmpty() {
+        assertThat(BookSearchIndex.tokenize(null)).isEmpty();
+        assertThat(BookSearchIndex.tokenize("  ")).isEmpty();
+        assertThat(BookSearchIndex.tokenize("--!")).isEmpty();
+    }
+
+    /* =======================
+       INCREMENTAL UPDATES
+       ======================= */
+    @Test
+    void indexedBookIsFoundByEveryField() {
+        index.index(book(1L, "Clean Code", "Robert Martin", "978-0-13-235088-4", "Software", "craftsmanship"));
+
+        assertThat(search("clean")).containsExactly(1L);
+        assertThat(search("martin")).containsExactly(1L);
+        assertThat(search("software")).containsExactly(1L);
+        assertThat(search("craftsmanship")).containsExactly(1L);
+        assertThat(search("9780132350884")).containsExactly(1L);
+    }
+
+    @Test
+    void lastTermMatchesAsPrefixAndEveryTermMustMatch() {
+        index.index(book(1L, "Domain Driven Design", "Eric Evans", null, null, null));
+        index.index(book(2L, "Design Patterns", "Erich Gamma", null, null, null));
+
+        assertThat(search("desi")).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(search("domain desi")).containsExactly(1L);
+        // only the last term is a prefix
+        assertThat(search("dom design")).isEmpty();
+    }
+
+    @Test
+    void titleMatchOutranksDescriptionMatch() {
+        index.index(book(1L, "Cooking Basics", null, null, null, "a gentle introduction to algorithms"));
+        index.index(book(2L, "Algorithms", null, null, null, null));
+
+        assertThat(search("algorithms")).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void updateReplacesTheTermsOfTheBook() {
+        index.index(book(1L, "Old Title", "Author", null, null, null));
+        index.index(book(1L, "New Title", "Author", null, null, null));
+
+        assertThat(search("old")).isEmpty();
+        assertThat(search("new")).containsExactly(1L);
+        assertThat(search("title")).containsExactly(1L);
+    }
+
+    @Test
+    void removedBookIsNoLongerFound() {
+        index.index(book(1L, "Refactoring", "Fowler", null, null, null));
+        index.index(book(2L, "Refactoring Databases", "Ambler", null, null, null));
+
+        index.remove(1L);
+
+        assertThat(search("refactoring")).containsExactly(2L);
+        assertThat(search("fowler")).isEmpty();
+    }
+
+    /* =======================
+       REBUILD
+       ======================= */
+    @Test
+    void rebuildWalksTheCatalogByIdAndReplacesTheIndex() {
+        List<Book> catalog = new ArrayList<>();
+        for (long id = 1; id <= 2500; id++) {
+            catalog.add(book(id, "Volume " + id, "Series Author", null, null, null));
+        }
+        stubCatalog(catalog, null);
+
+        // not in the catalog any more: must be gone after the rebuild
+        index.index(book(9999L, "Volume Removed", null, null, null, null));
+
+        index.rebuild();
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.search("series", PageRequest.of(0, 10)).getTotalElements()).isEqualTo(2500);
+        assertThat(search("2500")).containsExactly(2500L);
+        assertThat(search("removed")).isEmpty();
+        verify(bookRepository, times(3)).findByIdGreaterThanOrderByIdAsc(anyLong(), any(Limit.class));
+    }
+
+    @Test
+    void changesDuringTheRebuildSurviveTheSwap() {
+        List<Book> catalog = List.of(
+                book(1L, "Stale Title", null, null, null, null),
+                book(2L, "Deleted Meanwhile", null, null, null, null));
+
+        // the batch was read before these changes reached the index
+        stubCatalog(catalog, () -> {
+            index.index(book(1L, "Fresh Title", null, null, null, null));
+            index.remove(2L);
+            index.index(book(3L, "Added Meanwhile", null, null, null, null));
+        });
+
+        index.rebuild();
+
+        assertThat(search("stale")).isEmpty();
+        assertThat(search("fresh")).containsExactly(1L);
+        assertThat(search("deleted")).isEmpty();
+        assertThat(search("added")).containsExactly(3L);
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private List<Long> search(String query) {
+        return index.search(query, PageRequest.of(0, 50)).getContent();
+    }
+
+    // answers keyset batches from the list; duringFirstBatch runs once, after the first batch is read
+    private void stubCatalog(List<Book> catalog, Runnable duringFirstBatch) {
+        AtomicBoolean first = new AtomicBoolean(true);
+        when(bookRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Limit.class))).thenAnswer(call -> {
+            long after = call.getArgument(0);
+            Limit limit = call.getArgument(1);
+            List<Book> batch = catalog.stream()
+                    .filter(book -> book.getId() > after)
+                    .limit(limit.max())
+                    .toList();
+            if (duringFirstBatch != null && first.getAndSet(false)) {
+                duringFirstBatch.run();
+            }
+            return batch;
+        });
+    }
+
+    private static Book book(Long id, String title, String author, String isbn, String category, String description) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle(title);
+        book.setAuthor(author);
+        book.setIsbn(isbn);
+        book.setCategory(category);
+        book.setDescription(description);
+        return book;
+    }
+}
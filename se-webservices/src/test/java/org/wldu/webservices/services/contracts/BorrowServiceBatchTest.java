@@ -0,0 +1,174 @@
+package org.wldu.webservices.services.contracts;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.wldu.webservices.dto.BatchCirculationRequest;
+import org.wldu.webservices.dto.BatchCirculationResult;
+import org.wldu.webservices.dto.BatchItemResult;
+import org.wldu.webservices.dto.BatchItemResult.Status;
+import org.wldu.webservices.support.EmbeddedDatabaseTest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * The single-statement batch checkout and return: per-item outcomes in request
+ * order, and copies_available and borrow_books rows matching them exactly.
+ */
+class BorrowServiceBatchTest extends EmbeddedDatabaseTest {
+
+    private static final long UNKNOWN_BOOK = Long.MAX_VALUE;
+
+    @Autowired
+    private BorrowService borrowService;
+
+    @Autowired
+    private PenaltyBalanceService balances;
+
+    private Long customerId;
+
+    @BeforeEach
+    void setUp() {
+        customerId = newCustomer().getId();
+    }
+
+    /* =======================
+       CHECKOUT
+       ======================= */
+    @Test
+    void mixedCheckoutLendsWhatItCanAndReportsTheRest() {
+        Long twoCopies = newBook(2).getId();
+        Long lastCopy = newBook(1).getId();
+        Long exhausted = newBook(0).getId();
+
+        BatchCirculationResult result = borrowService.borrowBooks(new BatchCirculationRequest(customerId,
+                List.of(twoCopies, lastCopy, exhausted, UNKNOWN_BOOK, twoCopies), 7));
+
+        assertThat(result.items()).extracting(BatchItemResult::bookId, BatchItemResult::status)
+                .containsExactly(
+                        tuple(twoCopies, Status.BORROWED),
+                        tuple(lastCopy, Status.BORROWED),
+                        tuple(exhausted, Status.UNAVAILABLE),
+                        tuple(UNKNOWN_BOOK, Status.NOT_FOUND),
+                        tuple(twoCopies, Status.DUPLICATE));
+        assertThat(result.succeeded()).isEqualTo(2);
+        assertThat(result.failed()).isEqualTo(3);
+
+        // the duplicate took no second copy
+        assertThat(copiesAvailable(twoCopies)).isEqualTo(1);
+        assertThat(copiesAvailable(lastCopy)).isZero();
+        assertThat(copiesAvailable(exhausted)).isZero();
+
+        assertThat(openLoans(twoCopies)).containsExactly(result.items().get(0).borrowId());
+        assertThat(openLoans(lastCopy)).containsExactly(result.items().get(1).borrowId());
+        assertThat(openLoans(exhausted)).isEmpty();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM borrow_books WHERE customer_id = ? AND CAST(return_date AS date) - CAST(borrow_date AS date) = 7",
+                Integer.class, customerId)).isEqualTo(2);
+    }
+
+    @Test
+    void checkoutWithNothingAvailableChangesNothing() {
+        Long exhausted = newBook(0).getId();
+
+        BatchCirculationResult result = borrowService.borrowBooks(new BatchCirculationRequest(customerId,
+                List.of(exhausted, UNKNOWN_BOOK), null));
+
+        assertThat(result.succeeded()).isZero();
+        assertThat(result.items()).extracting(BatchItemResult::status)
+                .containsExactly(Status.UNAVAILABLE, Status.NOT_FOUND);
+        assertThat(copiesAvailable(exhausted)).isZero();
+        assertThat(loanCount()).isZero();
+    }
+
+    /* =======================
+       RETURN
+       ======================= */
+    @Test
+    void mixedReturnClosesOpenLoansAndReportsTheRest() {
+        Long returned = newBook(2).getId();
+        Long keptOut = newBook(1).getId();
+        Long neverBorrowed = newBook(3).getId();
+        borrowService.borrowBooks(new BatchCirculationRequest(customerId, List.of(returned, keptOut), 14));
+
+        BatchCirculationResult result = borrowService.returnBooks(new BatchCirculationRequest(customerId,
+                List.of(returned, neverBorrowed, UNKNOWN_BOOK, returned), null));
+
+        assertThat(result.items()).extracting(BatchItemResult::bookId, BatchItemResult::status)
+                .containsExactly(
+                        tuple(returned, Status.RETURNED),
+                        tuple(neverBorrowed, Status.NOT_BORROWED),
+                        tuple(UNKNOWN_BOOK, Status.NOT_BORROWED),
+                        tuple(returned, Status.DUPLICATE));
+        assertThat(result.succeeded()).isEqualTo(1);
+
+        assertThat(copiesAvailable(returned)).isEqualTo(2);
+        assertThat(copiesAvailable(keptOut)).isZero();
+        assertThat(copiesAvailable(neverBorrowed)).isEqualTo(3);
+
+        assertThat(openLoans(returned)).isEmpty();
+        assertThat(openLoans(keptOut)).hasSize(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT returned FROM borrow_books WHERE id = ?",
+                Boolean.class, result.items().get(0).borrowId())).isTrue();
+    }
+
+    @Test
+    void returnClosesOnlyTheOldestOpenLoanOfABook() {
+        Long bookId = newBook(2).getId();
+        Long older = borrowService.borrowBooks(new BatchCirculationRequest(customerId, List.of(bookId), 14))
+                .items().get(0).borrowId();
+        Long newer = borrowService.borrowBooks(new BatchCirculationRequest(customerId, List.of(bookId), 14))
+                .items().get(0).borrowId();
+        assertThat(copiesAvailable(bookId)).isZero();
+
+        BatchCirculationResult result = borrowService.returnBooks(
+                new BatchCirculationRequest(customerId, List.of(bookId), null));
+
+        assertThat(result.items().get(0).borrowId()).isEqualTo(older);
+        assertThat(openLoans(bookId)).containsExactly(newer);
+        assertThat(copiesAvailable(bookId)).isEqualTo(1);
+    }
+
+    @Test
+    void overdueReturnIsChargedPerDayLate() {
+        Long bookId = newBook(1).getId();
+        Long borrowId = borrowService.borrowBooks(new BatchCirculationRequest(customerId, List.of(bookId), 14))
+                .items().get(0).borrowId();
+        jdbcTemplate.update("UPDATE borrow_books SET return_date = now() - interval '3 days' WHERE id = ?", borrowId);
+
+        borrowService.returnBooks(new BatchCirculationRequest(customerId, List.of(bookId), null));
+
+        assertThat(jdbcTemplate.queryForObject("SELECT late_penalty FROM borrow_books WHERE id = ?",
+                Double.class, borrowId)).isEqualTo(3 * balances.getLateFeePerDay());
+        assertThat(copiesAvailable(bookId)).isEqualTo(1);
+    }
+
+    @Test
+    void cachedBooksAreNotStaleAfterABatch() {
+        Long bookId = newBook(2).getId();
+        assertThat(bookRepository.findById(bookId).orElseThrow().getCopiesAvailable()).isEqualTo(2);
+
+        borrowService.borrowBooks(new BatchCirculationRequest(customerId, List.of(bookId), 14));
+        assertThat(bookRepository.findById(bookId).orElseThrow().getCopiesAvailable()).isEqualTo(1);
+
+        borrowService.returnBooks(new BatchCirculationRequest(customerId, List.of(bookId), null));
+        assertThat(bookRepository.findById(bookId).orElseThrow().getCopiesAvailable()).isEqualTo(2);
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private List<Long> openLoans(Long bookId) {
+        return jdbcTemplate.queryForList(
+                "SELECT id FROM borrow_books WHERE customer_id = ? AND book_id = ? AND returned = false ORDER BY id",
+                Long.class, customerId, bookId);
+    }
+
+    private int loanCount() {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM borrow_books WHERE customer_id = ?", Integer.class, customerId);
+    }
+}
@@ -0,0 +1,149 @@
+package org.wldu.webservices.services.contracts;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.entities.Customer;
+import org.wldu.webservices.exception.BadRequestException;
+import org.wldu.webservices.repositories.BorrowRepository;
+import org.wldu.webservices.support.EmbeddedDatabaseTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Many desks checking out the same popular book at once.
+ * Availability must never go negative and every successful checkout must have its borrow row.
+ */
+class BorrowServiceConcurrencyTest extends EmbeddedDatabaseTest {
+
+    private static final Logger log = LoggerFactory.getLogger(BorrowServiceConcurrencyTest.class);
+
+    @Autowired
+    private BorrowService borrowService;
+
+    @Autowired
+    private BorrowRepository borrowRepository;
+
+    @Test
+    void concurrentCheckoutsNeverOversell() throws Exception {
+        int copies = 25;
+        Book book = newBook(copies);
+        Customer customer = newCustomer();
+
+        Result result = checkoutConcurrently(customer.getId(), book.getId(), 16, 10);
+
+        assertThat(result.unexpected()).isEmpty();
+        assertThat(result.succeeded()).isEqualTo(copies);
+        assertThat(result.rejected()).isEqualTo(16 * 10 - copies);
+        assertThat(bookRepository.findById(book.getId()).orElseThrow().getCopiesAvailable()).isZero();
+        assertThat(borrowRepository.findByBookId(book.getId())).hasSize(copies);
+    }
+
+    @Test
+    void returnsAndCheckoutsBalanceOut() throws Exception {
+        Book book = newBook(5);
+        Customer customer = newCustomer();
+
+        Result result = checkoutConcurrently(customer.getId(), book.getId(), 8, 5);
+        assertThat(result.succeeded()).isEqualTo(5);
+
+        // returning every loan twice concurrently must only give each copy back once
+        List<Long> borrowIds = borrowRepository.findByBookId(book.getId())
+                .stream().map(b -> b.getId()).toList();
+        AtomicInteger returned = new AtomicInteger();
+        runConcurrently(8, () -> {
+            for (Long id : borrowIds) {
+                try {
+                    borrowService.returnBook(id);
+                    returned.incrementAndGet();
+                } catch (BadRequestException ignored) {
+                    // already returned by another thread
+                }
+            }
+        });
+
+        assertThat(returned.get()).isEqualTo(5);
+        assertThat(bookRepository.findById(book.getId()).orElseThrow().getCopiesAvailable()).isEqualTo(5);
+    }
+
+    /**
+     * Throughput benchmark on a single hot row: every attempt succeeds, so the
+     * rate logged is pure checkout cost under row-level contention.
+     */
+    @Test
+    void hotBookCheckoutThroughput() throws Exception {
+        int threads = 32;
+        int perThread = 50;
+        Book book = newBook(threads * perThread);
+        Customer customer = newCustomer();
+
+        long started = System.nanoTime();
+        Result result = checkoutConcurrently(customer.getId(), book.getId(), threads, perThread);
+        double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+
+        log.info("Hot book checkout: {} checkouts by {} threads in {} s ({} checkouts/s)",
+                result.succeeded(), threads, String.format("%.2f", seconds),
+                String.format("%.0f", result.succeeded() / seconds));
+
+        assertThat(result.unexpected()).isEmpty();
+        assertThat(result.succeeded()).isEqualTo(threads * perThread);
+        assertThat(bookRepository.findById(book.getId()).orElseThrow().getCopiesAvailable()).isZero();
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private Result checkoutConcurrently(Long customerId, Long bookId, int threads, int perThread)
+            throws InterruptedException {
+
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Throwable> unexpected = Collections.synchronizedList(new ArrayList<>());
+
+        runConcurrently(threads, () -> {
+            for (int i = 0; i < perThread; i++) {
+                try {
+                    borrowService.borrowBook(customerId, bookId, 14);
+                    succeeded.incrementAndGet();
+                } catch (BadRequestException ex) {
+                    rejected.incrementAndGet();
+                } catch (Throwable ex) {
+                    unexpected.add(ex);
+                }
+            }
+        });
+
+        return new Result(succeeded.get(), rejected.get(), List.copyOf(unexpected));
+    }
+
+    private void runConcurrently(int threads, Runnable task) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int t = 0; t < threads; t++) {
+            pool.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            });
+        }
+
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(2, TimeUnit.MINUTES)).isTrue();
+    }
+
+    private record Result(int succeeded, int rejected, List<Throwable> unexpected) {
+    }
+}
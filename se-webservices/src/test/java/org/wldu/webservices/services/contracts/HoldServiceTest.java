@@ -0,0 +1,209 @@
+package org.wldu.webservices.services.contracts;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.wldu.webservices.entities.BookHold;
+import org.wldu.webservices.entities.BorrowBook;
+import org.wldu.webservices.entities.HoldStatus;
+import org.wldu.webservices.exception.BadRequestException;
+import org.wldu.webservices.support.EmbeddedDatabaseTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * A single-copy book with a queue of holds: the copy has to travel down the
+ * queue on every return, checkout, cancellation and expiry, and
+ * copies_available must count only the copies nobody is holding.
+ * Holds written straight to book_holds stand in for holds placed or made
+ * READY by another instance, which this instance's queue index never saw.
+ */
+class HoldServiceTest extends EmbeddedDatabaseTest {
+
+    @Autowired
+    private HoldService holdService;
+
+    @Autowired
+    private BorrowService borrowService;
+
+    private Long bookId;
+    private Long firstHolder;
+    private Long secondHolder;
+    private Long loanId;
+    private BookHold firstHold;
+    private BookHold secondHold;
+
+    // the only copy is on loan and two customers queue for it, oldest first
+    @BeforeEach
+    void queueForTheOnlyCopy() {
+        bookId = newBook(1).getId();
+        loanId = borrowService.borrowBook(newCustomer().getId(), bookId, 14).getId();
+        assertThat(copiesAvailable()).isZero();
+
+        firstHolder = newCustomer().getId();
+        secondHolder = newCustomer().getId();
+        firstHold = holdService.placeHold(firstHolder, bookId);
+        secondHold = holdService.placeHold(secondHolder, bookId);
+    }
+
+    @Test
+    void holdCannotBePlacedWhileCopiesAreOnTheShelf() {
+        Long shelved = newBook(2).getId();
+
+        assertThatThrownBy(() -> holdService.placeHold(firstHolder, shelved))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void returnGoesToTheOldestWaitingHold() {
+        borrowService.returnBook(loanId);
+
+        assertThat(status(firstHold)).isEqualTo(HoldStatus.READY);
+        assertThat(status(secondHold)).isEqualTo(HoldStatus.WAITING);
+        assertThat(jdbcTemplate.queryForObject("SELECT expires_at > now() FROM book_holds WHERE id = ?",
+                Boolean.class, firstHold.getId())).isTrue();
+        // the returned copy is set aside, not back on the shelf
+        assertThat(copiesAvailable()).isZero();
+    }
+
+    @Test
+    void checkoutByTheReadyHolderClaimsTheSetAsideCopy() {
+        borrowService.returnBook(loanId);
+
+        BorrowBook loan = borrowService.borrowBook(firstHolder, bookId, 14);
+
+        assertThat(loan.getId()).isNotNull();
+        assertThat(status(firstHold)).isEqualTo(HoldStatus.FULFILLED);
+        assertThat(copiesAvailable()).isZero();
+        assertThat(activeLoans()).isEqualTo(1);
+    }
+
+    @Test
+    void setAsideCopyIsNotAvailableToOthers() {
+        borrowService.returnBook(loanId);
+
+        assertThatThrownBy(() -> borrowService.borrowBook(secondHolder, bookId, 14))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> borrowService.borrowBook(newCustomer().getId(), bookId, 14))
+                .isInstanceOf(BadRequestException.class);
+
+        assertThat(status(firstHold)).isEqualTo(HoldStatus.READY);
+        assertThat(copiesAvailable()).isZero();
+        assertThat(activeLoans()).isZero();
+    }
+
+    @Test
+    void cancellingAReadyHoldPassesTheCopyToTheNextHolder() {
+        borrowService.returnBook(loanId);
+
+        holdService.cancelHold(firstHold.getId());
+
+        assertThat(status(firstHold)).isEqualTo(HoldStatus.CANCELLED);
+        assertThat(status(secondHold)).isEqualTo(HoldStatus.READY);
+        assertThat(copiesAvailable()).isZero();
+
+        // nobody left in the queue: the copy goes back on the shelf
+        holdService.cancelHold(secondHold.getId());
+
+        assertThat(status(secondHold)).isEqualTo(HoldStatus.CANCELLED);
+        assertThat(copiesAvailable()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelledWaitingHoldIsSkipped() {
+        holdService.cancelHold(firstHold.getId());
+
+        borrowService.returnBook(loanId);
+
+        assertThat(status(firstHold)).isEqualTo(HoldStatus.CANCELLED);
+        assertThat(status(secondHold)).isEqualTo(HoldStatus.READY);
+        assertThat(copiesAvailable()).isZero();
+    }
+
+    @Test
+    void expiredReadyHoldPassesTheCopyToTheNextHolder() {
+        borrowService.returnBook(loanId);
+        jdbcTemplate.update("UPDATE book_holds SET expires_at = now() - interval '1 hour' WHERE id = ?",
+                firstHold.getId());
+
+        holdService.expireUncollected();
+
+        assertThat(status(firstHold)).isEqualTo(HoldStatus.EXPIRED);
+        assertThat(status(secondHold)).isEqualTo(HoldStatus.READY);
+        assertThat(copiesAvailable()).isZero();
+
+        BorrowBook loan = borrowService.borrowBook(secondHolder, bookId, 14);
+        assertThat(loan.getId()).isNotNull();
+        assertThat(status(secondHold)).isEqualTo(HoldStatus.FULFILLED);
+        assertThat(copiesAvailable()).isZero();
+        assertThat(activeLoans()).isEqualTo(1);
+    }
+
+    @Test
+    void holdPlacedElsewhereGetsTheReturnedCopy() {
+        Long book = newBook(1).getId();
+        Long loan = borrowService.borrowBook(newCustomer().getId(), book, 14).getId();
+        Long hold = insertHold(book, newCustomer().getId(), HoldStatus.WAITING);
+
+        borrowService.returnBook(loan);
+
+        assertThat(status(hold)).isEqualTo(HoldStatus.READY);
+        assertThat(copiesAvailable(book)).isZero();
+    }
+
+    @Test
+    void holdMadeReadyElsewhereIsClaimedAtCheckout() {
+        Long book = newBook(1).getId();
+        Long holder = newCustomer().getId();
+        // the copy was set aside for the hold on another instance
+        jdbcTemplate.update("UPDATE books SET copies_available = 0 WHERE id = ?", book);
+        Long hold = insertHold(book, holder, HoldStatus.READY);
+
+        BorrowBook loan = borrowService.borrowBook(holder, book, 14);
+
+        assertThat(loan.getId()).isNotNull();
+        assertThat(status(hold)).isEqualTo(HoldStatus.FULFILLED);
+        assertThat(copiesAvailable(book)).isZero();
+    }
+
+    @Test
+    void holdIsRefusedWhenACopyCameBackBehindTheCache() {
+        Long book = newBook(0).getId();
+        // cached with no copy, then returned through another instance
+        assertThat(bookRepository.findById(book).orElseThrow().getCopiesAvailable()).isZero();
+        jdbcTemplate.update("UPDATE books SET copies_available = 1 WHERE id = ?", book);
+
+        assertThatThrownBy(() -> holdService.placeHold(firstHolder, book))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private HoldStatus status(BookHold hold) {
+        return status(hold.getId());
+    }
+
+    private HoldStatus status(Long holdId) {
+        return HoldStatus.valueOf(jdbcTemplate.queryForObject(
+                "SELECT status FROM book_holds WHERE id = ?", String.class, holdId));
+    }
+
+    private Long insertHold(Long book, Long customer, HoldStatus status) {
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO book_holds (book_id, customer_id, status, created_at, ready_at, expires_at)
+                VALUES (?, ?, ?, now(), now(), now() + interval '3 days')
+                RETURNING id
+                """, Long.class, book, customer, status.name());
+    }
+
+    private int copiesAvailable() {
+        return copiesAvailable(bookId);
+    }
+
+    private int activeLoans() {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM borrow_books WHERE book_id = ? AND returned = false", Integer.class, bookId);
+    }
+}
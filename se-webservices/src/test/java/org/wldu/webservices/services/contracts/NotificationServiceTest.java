@@ -0,0 +1,161 @@
+package org.wldu.webservices.services.contracts;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.wldu.webservices.dto.BroadcastRequest;
+import org.wldu.webservices.dto.MarkReadRequest;
+import org.wldu.webservices.dto.MarkReadResult;
+import org.wldu.webservices.dto.NotificationView;
+import org.wldu.webservices.entities.NotificationRole;
+import org.wldu.webservices.pagination.KeysetPage;
+import org.wldu.webservices.support.EmbeddedDatabaseTest;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A customer's inbox merges their own notifications with the customer broadcasts:
+ * keyset pages must continue across both sources, and mark-read (by ids or up to
+ * an id) must reach both, leaving the unread count right.
+ * Customer broadcasts are seen by every customer, so each test starts without any.
+ */
+class NotificationServiceTest extends EmbeddedDatabaseTest {
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private UnreadNotificationCounter unreadCounter;
+
+    @BeforeEach
+    void noCustomerBroadcasts() {
+        jdbcTemplate.update("DELETE FROM notifications WHERE receiver_customer_id IS NULL AND receiver_role = 'CUSTOMER'");
+        unreadCounter.refreshBroadcasts();
+    }
+
+    /* =======================
+       INBOX
+       ======================= */
+    @Test
+    void pagesContinueAcrossOwnNotificationsAndBroadcasts() {
+        Long customer = newCustomer().getId();
+        Long other = newCustomer().getId();
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+
+        Long own1 = own(customer, now.minusMinutes(10));
+        Long broadcast1 = broadcast(now.minusMinutes(9));
+        Long own2 = own(customer, now.minusMinutes(8));
+        own(other, now.minusMinutes(7));
+        Long broadcast2 = broadcast(now.minusMinutes(6));
+        // same instant: the newer id comes first
+        Long own3 = own(customer, now.minusMinutes(5));
+        Long own4 = own(customer, now.minusMinutes(5));
+        Long broadcast3 = broadcast(now.minusMinutes(4));
+
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            KeysetPage<NotificationView> page = notificationService.getInbox(customer, cursor, 2);
+            page.content().forEach(view -> seen.add(view.id()));
+            assertThat(page.hasMore()).isEqualTo(page.nextCursor() != null);
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(seen).containsExactly(broadcast3, own4, own3, broadcast2, own2, broadcast1, own1);
+        assertThat(pages).isEqualTo(4);
+    }
+
+    /* =======================
+       MARK READ
+       ======================= */
+    @Test
+    void markReadByIdsReachesOwnNotificationsAndBroadcasts() {
+        Long customer = newCustomer().getId();
+        Long other = newCustomer().getId();
+        Long own1 = notify(customer);
+        notify(customer);
+        Long broadcast1 = broadcast();
+        broadcast();
+        Long othersOwn = notify(other);
+        assertThat(notificationService.getUnreadCount(customer)).isEqualTo(4);
+
+        // another customer's notification in the list is left alone
+        MarkReadResult result = notificationService.markAsRead(customer,
+                new MarkReadRequest(List.of(own1, broadcast1, othersOwn), null));
+
+        assertThat(result.marked()).isEqualTo(2);
+        assertThat(result.unread()).isEqualTo(2);
+        assertThat(notificationService.getUnreadCount(customer)).isEqualTo(2);
+        assertThat(readIds(customer)).containsExactlyInAnyOrder(own1, broadcast1);
+        // the broadcast is read for this customer only
+        assertThat(notificationService.getUnreadCount(other)).isEqualTo(3);
+    }
+
+    @Test
+    void markReadUpToIdStopsAtThatId() {
+        Long customer = newCustomer().getId();
+        Long own1 = notify(customer);
+        Long broadcast1 = broadcast();
+        Long own2 = notify(customer);
+        Long broadcast2 = broadcast();
+        notify(customer);
+        assertThat(notificationService.getUnreadCount(customer)).isEqualTo(5);
+
+        MarkReadResult result = notificationService.markAsRead(customer, new MarkReadRequest(null, broadcast2));
+
+        assertThat(result.marked()).isEqualTo(4);
+        assertThat(result.unread()).isEqualTo(1);
+        assertThat(readIds(customer)).containsExactlyInAnyOrder(own1, broadcast1, own2, broadcast2);
+
+        // nothing left to mark below the id
+        MarkReadResult again = notificationService.markAsRead(customer, new MarkReadRequest(null, broadcast2));
+        assertThat(again.marked()).isZero();
+        assertThat(again.unread()).isEqualTo(1);
+
+        // a broadcast sent afterwards is unread
+        broadcast();
+        assertThat(notificationService.getUnreadCount(customer)).isEqualTo(2);
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private Long notify(Long customerId) {
+        return notificationService.notifyCustomer(customerId, "Overdue book", "Please return it").getId();
+    }
+
+    private Long broadcast() {
+        return notificationService.broadcast(
+                new BroadcastRequest(NotificationRole.CUSTOMER, "Library closed", "Closed on Monday")).getId();
+    }
+
+    private Long own(Long customerId, LocalDateTime createdAt) {
+        return insert(NotificationRole.CUSTOMER.name(), customerId, createdAt);
+    }
+
+    private Long broadcast(LocalDateTime createdAt) {
+        return insert(NotificationRole.CUSTOMER.name(), null, createdAt);
+    }
+
+    private Long insert(String role, Long customerId, LocalDateTime createdAt) {
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO notifications (title, message, receiver_role, receiver_customer_id, read, created_at)
+                VALUES ('Notice', 'Text', ?, ?, false, ?)
+                RETURNING id
+                """, Long.class, role, customerId, Timestamp.valueOf(createdAt));
+    }
+
+    private List<Long> readIds(Long customerId) {
+        return notificationService.getCustomerNotifications(customerId).stream()
+                .filter(NotificationView::read)
+                .map(NotificationView::id)
+                .toList();
+    }
+}
@@ -0,0 +1,168 @@
+package org.wldu.webservices.services.contracts;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.wldu.webservices.dto.OverdueScanReport;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.entities.BorrowBook;
+import org.wldu.webservices.entities.Customer;
+import org.wldu.webservices.entities.JobCheckpoint;
+import org.wldu.webservices.repositories.JobCheckpointRepository;
+import org.wldu.webservices.support.EmbeddedDatabaseTest;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The nightly late-fee scan against a real database, in batches of two: a full run,
+ * a run resumed from its checkpoint, a second run on the same day and a fee
+ * waived by hand. Other open loans may share the database, so only the loans
+ * created here are checked.
+ */
+class OverdueScannerTest extends EmbeddedDatabaseTest {
+
+    private static final double FEE_PER_DAY = 5;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JobCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private PenaltyBalanceService balances;
+
+    @Autowired
+    private BorrowService borrowService;
+
+    private OverdueScanner scanner;
+
+    @BeforeEach
+    void freshScanner() {
+        jdbcTemplate.update("DELETE FROM job_checkpoints WHERE job_name = ?", OverdueScanner.JOB_NAME);
+        scanner = new OverdueScanner(jdbcTemplate, transactionTemplate, checkpointRepository,
+                notificationService, balances, FEE_PER_DAY, 2);
+    }
+
+    @Test
+    void chargesEveryOverdueLoanAcrossBatches() {
+        List<Long> loans = overdueLoans(5, 3);
+        Long onTime = loan(newBook(1), newCustomer(), LocalDateTime.now().plusDays(7));
+
+        OverdueScanReport report = scanner.scan();
+
+        assertThat(report.status()).isEqualTo(JobCheckpoint.COMPLETED);
+        assertThat(report.resumed()).isFalse();
+        assertThat(report.penaltiesUpdated()).isGreaterThanOrEqualTo(5);
+        loans.forEach(id -> assertThat(latePenalty(id)).isEqualTo(3 * FEE_PER_DAY));
+        assertThat(latePenalty(onTime)).isZero();
+
+        JobCheckpoint checkpoint = checkpointRepository.findById(OverdueScanner.JOB_NAME).orElseThrow();
+        assertThat(checkpoint.getLastId()).isGreaterThanOrEqualTo(loans.get(4));
+        assertThat(checkpoint.getProcessed()).isGreaterThanOrEqualTo(5);
+    }
+
+    @Test
+    void resumedRunContinuesAfterTheCheckpoint() {
+        List<Long> loans = overdueLoans(5, 3);
+        // a run that crashed after the batch ending at the second loan
+        jdbcTemplate.update("""
+                INSERT INTO job_checkpoints (job_name, run_date, as_of, last_id, processed, updated,
+                                             status, started_at, updated_at)
+                VALUES (?, ?, ?, ?, 2, 2, ?, ?, ?)
+                """, OverdueScanner.JOB_NAME, LocalDate.now(), Timestamp.valueOf(LocalDateTime.now()),
+                loans.get(1), JobCheckpoint.RUNNING, Timestamp.valueOf(LocalDateTime.now()),
+                Timestamp.valueOf(LocalDateTime.now()));
+
+        OverdueScanReport report = scanner.scan();
+
+        assertThat(report.status()).isEqualTo(JobCheckpoint.COMPLETED);
+        assertThat(report.resumed()).isTrue();
+        // the batches before the checkpoint are not charged again
+        assertThat(latePenalty(loans.get(0))).isZero();
+        assertThat(latePenalty(loans.get(1))).isZero();
+        loans.subList(2, 5).forEach(id -> assertThat(latePenalty(id)).isEqualTo(3 * FEE_PER_DAY));
+    }
+
+    @Test
+    void secondRunOnTheSameDayDoesNothing() {
+        List<Long> loans = overdueLoans(3, 2);
+        scanner.scan();
+        Long late = overdueLoans(1, 4).get(0);
+
+        OverdueScanReport again = scanner.scan();
+
+        assertThat(again.status()).isEqualTo(JobCheckpoint.COMPLETED);
+        assertThat(again.scanned()).isZero();
+        assertThat(again.penaltiesUpdated()).isZero();
+        loans.forEach(id -> assertThat(latePenalty(id)).isEqualTo(2 * FEE_PER_DAY));
+        assertThat(latePenalty(late)).isZero();
+    }
+
+    @Test
+    void feeWaivedByHandIsKept() {
+        Long waived = overdueLoans(1, 3).get(0);
+        Long reduced = overdueLoans(1, 3).get(0);
+        scanner.scan();
+        borrowService.updatePenalty(waived, penalty(0.0));
+        borrowService.updatePenalty(reduced, penalty(4.0));
+
+        // the next night's run
+        jdbcTemplate.update("DELETE FROM job_checkpoints WHERE job_name = ?", OverdueScanner.JOB_NAME);
+        scanner.scan();
+
+        assertThat(latePenalty(waived)).isZero();
+        assertThat(latePenalty(reduced)).isEqualTo(4.0);
+
+        // nor is it charged up to the return day when the book comes back
+        borrowService.returnBook(waived);
+        assertThat(latePenalty(waived)).isZero();
+    }
+
+    /* =======================
+       HELPERS
+       ======================= */
+    private List<Long> overdueLoans(int count, int daysOverdue) {
+        Customer customer = newCustomer();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(loan(newBook(1), customer, LocalDateTime.now().minusDays(daysOverdue).minusMinutes(1)));
+        }
+        return ids;
+    }
+
+    private Long loan(Book book, Customer customer, LocalDateTime due) {
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO borrow_books (version, customer_id, book_id, borrow_date, return_date,
+                                          returned, broken_pages, late_penalty, lost, lost_price, status)
+                VALUES (0, ?, ?, ?, ?, false, 0, 0, false, 0, false)
+                RETURNING id
+                """, Long.class, customer.getId(), book.getId(),
+                Timestamp.valueOf(due.minusDays(14)), Timestamp.valueOf(due));
+    }
+
+    private BorrowBook penalty(double latePenalty) {
+        BorrowBook data = new BorrowBook();
+        data.setBrokenPages(0);
+        data.setLatePenalty(latePenalty);
+        data.setLost(false);
+        data.setLostPrice(0.0);
+        data.setStatus(false);
+        return data;
+    }
+
+    private double latePenalty(Long loanId) {
+        return jdbcTemplate.queryForObject("SELECT late_penalty FROM borrow_books WHERE id = ?",
+                Double.class, loanId);
+    }
+}
@@ -0,0 +1,74 @@
+package org.wldu.webservices.support;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.wldu.webservices.entities.Book;
+import org.wldu.webservices.entities.Customer;
+import org.wldu.webservices.repositories.BookRepository;
+import org.wldu.webservices.repositories.CustomerRepository;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base for tests against an embedded PostgreSQL: fresh books and customers, and
+ * availability read from the table.
+ * <p>
+ * The JCache second-level cache outlives the Spring context, while every context
+ * gets its own database, so a book cached by another test class can carry the
+ * same id as one created here. It is emptied before each test.
+ */
+@SpringBootTest
+@AutoConfigureEmbeddedDatabase(provider = AutoConfigureEmbeddedDatabase.DatabaseProvider.ZONKY)
+public abstract class EmbeddedDatabaseTest {
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    protected BookRepository bookRepository;
+
+    @Autowired
+    protected CustomerRepository customerRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void emptySecondLevelCache() {
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    /* =======================
+       FIXTURES
+       ======================= */
+    protected Book newBook(int copies) {
+        int n = SEQUENCE.incrementAndGet();
+        Book book = new Book();
+        book.setTitle("Test Book " + n);
+        book.setAuthor("Author " + n);
+        book.setIsbn("TEST-" + System.nanoTime() + "-" + n);
+        book.setTotalCopies(Math.max(copies, 1));
+        book.setCopiesAvailable(copies);
+        return bookRepository.save(book);
+    }
+
+    protected Customer newCustomer() {
+        int n = SEQUENCE.incrementAndGet();
+        Customer customer = new Customer();
+        customer.setName("Reader " + n);
+        customer.setEmail("reader" + n + "@example.com");
+        customer.setPhoneNumber(String.format("09%08d", n));
+        return customerRepository.save(customer);
+    }
+
+    protected int copiesAvailable(Long bookId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT copies_available FROM books WHERE id = ?", Integer.class, bookId);
+    }
+}